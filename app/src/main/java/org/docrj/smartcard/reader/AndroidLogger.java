@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import org.docrj.smartcard.util.Log;
+
+/**
+ * Forwards logging from the core library (org.docrj.smartcard.util.Log)
+ * to android.util.Log
+ */
+public class AndroidLogger implements Log.Logger {
+
+    private static final AndroidLogger INSTANCE = new AndroidLogger();
+
+    /**
+     * Routes core library logging to logcat; safe to call more than once
+     */
+    public static void install() {
+        Log.setLogger(INSTANCE);
+    }
+
+    @Override
+    public void d(String tag, String msg) {
+        android.util.Log.d(tag, msg);
+    }
+
+    @Override
+    public void w(String tag, String msg) {
+        android.util.Log.w(tag, msg);
+    }
+
+    @Override
+    public void e(String tag, String msg, Throwable tr) {
+        android.util.Log.e(tag, msg, tr);
+    }
+}
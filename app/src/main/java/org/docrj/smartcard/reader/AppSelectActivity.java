@@ -42,7 +42,6 @@ import android.preference.PreferenceManager;
 import android.support.v4.view.MenuItemCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.AppCompatActivity;
-import android.support.v7.widget.ShareActionProvider;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.ViewGroup;
@@ -64,6 +63,8 @@ import com.afollestad.materialdialogs.AlertDialogWrapper;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import org.docrj.smartcard.emv.TagProvider;
+
 
 public class AppSelectActivity extends AppCompatActivity implements ReaderXcvr.UiCallbacks,
     ReaderCallback, SharedPreferences.OnSharedPreferenceChangeListener {
@@ -165,7 +166,7 @@ public class AppSelectActivity extends AppCompatActivity implements ReaderXcvr.U
         mHandler = new Handler();
         mNfcManager = new NfcManager(this, this);
 
-        ApduParser.init(this);
+        AndroidLogger.install();
 
         // persistent data in shared prefs
         SharedPreferences ss = getSharedPreferences("prefs", Context.MODE_PRIVATE);
@@ -326,6 +327,12 @@ public class AppSelectActivity extends AppCompatActivity implements ReaderXcvr.U
         super.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        mConsole.onDestroy();
+        super.onDestroy();
+    }
+
     @Override
     public void onBackPressed() {
         if (mNavDrawer.onBackPressed()) {
@@ -365,7 +372,7 @@ public class AppSelectActivity extends AppCompatActivity implements ReaderXcvr.U
         prepareOptionsMenu();
 
         MenuItem item = menu.findItem(R.id.menu_share_msgs);
-        mConsole.setShareProvider((ShareActionProvider) MenuItemCompat.getActionProvider(item));
+        mConsole.setShareProvider((LazyShareActionProvider) MenuItemCompat.getActionProvider(item));
         return true;
     }
 
@@ -484,13 +491,14 @@ public class AppSelectActivity extends AppCompatActivity implements ReaderXcvr.U
                 });
                 // manual select mode; for multiple selects per tap/connect
                 // does not select ppse for payment apps unless specifically configured
-                xcvr = new ManualReaderXcvr(isoDep, aid, this);
+                xcvr = new ManualReaderXcvr(new IsoDepTransport(isoDep), aid, this);
             } else if (mApps.get(mSelectedAppPos).getType() == SmartcardApp.TYPE_PAYMENT) {
                 // payment, ie. always selects ppse first
-                xcvr = new PaymentReaderXcvr(isoDep, aid, this, TEST_MODE_APP_SELECT);
+                xcvr = new PaymentReaderXcvr(new IsoDepTransport(isoDep), aid, this,
+                        new ResourceMessages(getResources()), true);
             } else {
                 // other/non-payment; auto select on each tap/connect
-                xcvr = new OtherReaderXcvr(isoDep, aid, this);
+                xcvr = new OtherReaderXcvr(new IsoDepTransport(isoDep), aid, this);
             }
 
             new Thread(xcvr).start();
@@ -498,23 +506,24 @@ public class AppSelectActivity extends AppCompatActivity implements ReaderXcvr.U
     }
 
     @Override
-    public void onMessageSend(final String raw, final String name) {
-        mConsole.write(raw, MessageAdapter.MSG_SEND, name, null);
+    public void onMessageSend(final String raw, final String name, final byte[] apdu) {
+        mConsole.write(raw, MessageAdapter.MSG_SEND, name, apdu, null);
     }
 
     @Override
-    public void onMessageRcv(final String raw, final String name, final String parsed) {
-        mConsole.write(raw, MessageAdapter.MSG_RCV, name, parsed);
+    public void onMessageRcv(final String raw, final String name, final byte[] apdu,
+            final TagProvider tagProvider) {
+        mConsole.write(raw, MessageAdapter.MSG_RCV, name, apdu, tagProvider);
     }
 
     @Override
     public void onOkay(final String message) {
-        mConsole.write(message, MessageAdapter.MSG_OKAY, null, null);
+        mConsole.write(message, MessageAdapter.MSG_OKAY, null);
     }
 
     @Override
     public void onError(final String message) {
-        mConsole.write(message, MessageAdapter.MSG_ERROR, null, null);
+        mConsole.write(message, MessageAdapter.MSG_ERROR, null);
     }
 
     @Override
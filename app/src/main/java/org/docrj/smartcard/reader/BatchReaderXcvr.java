@@ -19,90 +19,83 @@
 
 package org.docrj.smartcard.reader;
 
-import android.content.Context;
-import android.nfc.tech.IsoDep;
+import java.io.IOException;
 import java.util.List;
 
-public class BatchReaderXcvr implements Runnable, ReaderXcvr.UiCallbacks {
+import org.docrj.smartcard.iso7816.CardLostException;
+import org.docrj.smartcard.iso7816.CardTransport;
 
-    private final List<SmartcardApp> mApps;
-    private final IsoDep mIsoDep;
-    private ReaderXcvr.UiCallbacks mUiCallbacks;
-    private Context mContext;
+import android.os.SystemClock;
+
+/**
+ * Selects each app of a group in turn over a single connection to the
+ * smartcard, on the calling thread
+ */
+public class BatchReaderXcvr extends OtherReaderXcvr {
 
-    private int mSize;
-    private int mIndex;
+    private final List<SmartcardApp> mApps;
 
-    public BatchReaderXcvr(IsoDep isoDep, List<SmartcardApp> apps,
+    public BatchReaderXcvr(CardTransport transport, List<SmartcardApp> apps,
                            ReaderXcvr.UiCallbacks uiCallbacks) {
-        mIsoDep = isoDep;
+        super(transport, firstAid(apps), uiCallbacks);
         mApps = apps;
-        mUiCallbacks = uiCallbacks;
-        mContext = (Context) uiCallbacks;
-        mSize = apps.size();
-        mIndex = 0;
     }
 
-    private void selectNextApp() {
-        // using onOkay() generically as app name, header for each app select
-        onOkay(mApps.get(mIndex).getName());
-        new Thread(new OtherReaderXcvr(mIsoDep, mApps.get(mIndex++).getAid(),
-                this, mContext)).start();
+    private static String firstAid(List<SmartcardApp> apps) {
+        if (apps.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least 1 app");
+        }
+        return apps.get(0).getAid();
     }
 
     @Override
     public void run() {
-        selectNextApp();
-    }
+        boolean err = false;
+        try {
+            try {
+                // connecting once for the whole batch, rather than once per app,
+                // saves time and makes losing the tag part way through less likely
+                mTransport.connect();
+                long batchStart = SystemClock.elapsedRealtime();
+
+                for (int i = 0; i < mApps.size(); i++) {
+                    SmartcardApp app = mApps.get(i);
+                    if (i > 0) {
+                        mUiCallbacks.onSeparator();
+                    }
+                    // using onOkay() generically as app name, header for each app select
+                    mUiCallbacks.onOkay(app.getName());
+
+                    mAid = app.getAid();
+                    mAidBytes = app.getAidBytes();
+                    long start = SystemClock.elapsedRealtime();
+                    selectApp();
+                    mUiCallbacks.onOkay(mContext.getString(R.string.select_app_time,
+                            SystemClock.elapsedRealtime() - start));
+                }
+
+                mUiCallbacks.onOkay(mContext.getString(R.string.batch_complete));
+                mUiCallbacks.onOkay(mContext.getString(R.string.batch_time,
+                        mApps.size(), SystemClock.elapsedRealtime() - batchStart));
+            } finally {
+                finishChecks();
+            }
+        } catch (CardLostException e) {
+            mUiCallbacks.onError(mContext.getString(R.string.tag_lost_err));
+            err = true;
+        } catch (IOException e) {
+            mUiCallbacks.onError(e.getMessage());
+            err = true;
+        } finally {
+            try {
+                mTransport.close();
+            } catch (IOException e) {
+            }
+        }
 
-    // callback for each select completion
-    @Override
-    public void onFinish(boolean err) {
         if (err) {
-            onError(mContext.getString(R.string.batch_interrupted));
-        } else if (mIndex < mSize) {
-            mUiCallbacks.onSeparator();
-            selectNextApp();
-        } else {
-            onOkay(mContext.getString(R.string.batch_complete));
+            mUiCallbacks.onError(mContext.getString(R.string.batch_interrupted));
         }
-    }
-
-    // display console messages
-    @Override
-    public void onMessageSend(String raw, String name) {
-        mUiCallbacks.onMessageSend(raw, name);
-    }
-
-    @Override
-    public void onMessageRcv(String raw, String name, String parsed) {
-        mUiCallbacks.onMessageRcv(raw, name, parsed);
-    }
-
-    @Override
-    public void onOkay(String message) {
-        mUiCallbacks.onOkay(message);
-    }
-
-    @Override
-    public void onError(String message) {
-        mUiCallbacks.onError(message);
-    }
-
-    @Override
-    public void onSeparator() {
-        mUiCallbacks.onSeparator();
-    }
-
-    // clear console messages
-    @Override
-    public void clearMessages(){
-        mUiCallbacks.clearMessages();
-    }
-
-    // ui listeners
-    @Override
-    public void setUserSelectListener(ReaderXcvr.UiListener callback) {
-        mUiCallbacks.setUserSelectListener(callback);
+        mUiCallbacks.onFinish(err);
     }
 }
@@ -35,7 +35,6 @@ import android.preference.PreferenceManager;
 import android.support.v4.view.MenuItemCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.AppCompatActivity;
-import android.support.v7.widget.ShareActionProvider;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -51,6 +50,8 @@ import com.afollestad.materialdialogs.AlertDialogWrapper;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import org.docrj.smartcard.emv.TagProvider;
+
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -129,7 +130,7 @@ public class BatchSelectActivity extends AppCompatActivity implements ReaderXcvr
         mConsole = new Console(this, savedInstanceState, TEST_MODE_BATCH_SELECT, listView, switcher);
         mNfcManager = new NfcManager(this, this);
 
-        ApduParser.init(this);
+        AndroidLogger.install();
 
         // persistent data in shared prefs
         SharedPreferences ss = getSharedPreferences("prefs", Context.MODE_PRIVATE);
@@ -257,6 +258,12 @@ public class BatchSelectActivity extends AppCompatActivity implements ReaderXcvr
         mNfcManager.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        mConsole.onDestroy();
+        super.onDestroy();
+    }
+
     @Override
     public void onBackPressed() {
         if (mNavDrawer.onBackPressed()) {
@@ -292,7 +299,7 @@ public class BatchSelectActivity extends AppCompatActivity implements ReaderXcvr
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.activity_batch_select, menu);
         MenuItem item = menu.findItem(R.id.menu_share_msgs);
-        mConsole.setShareProvider((ShareActionProvider) MenuItemCompat.getActionProvider(item));
+        mConsole.setShareProvider((LazyShareActionProvider) MenuItemCompat.getActionProvider(item));
         return true;
     }
 
@@ -400,28 +407,29 @@ public class BatchSelectActivity extends AppCompatActivity implements ReaderXcvr
             onError(getString(R.string.wrong_tag_err));
         } else {
             List<SmartcardApp> memberApps = mGrpToMembersMap.get(mSelectedGrpPos);
-            new Thread(new BatchReaderXcvr(isoDep, memberApps, this)).start();
+            new Thread(new BatchReaderXcvr(new IsoDepTransport(isoDep), memberApps, this)).start();
         }
     }
 
     @Override
-    public void onMessageSend(final String raw, final String name) {
-        mConsole.write(raw, MessageAdapter.MSG_SEND, name, null);
+    public void onMessageSend(final String raw, final String name, final byte[] apdu) {
+        mConsole.write(raw, MessageAdapter.MSG_SEND, name, apdu, null);
     }
 
     @Override
-    public void onMessageRcv(final String raw, final String name, final String parsed) {
-        mConsole.write(raw, MessageAdapter.MSG_RCV, name, parsed);
+    public void onMessageRcv(final String raw, final String name, final byte[] apdu,
+            final TagProvider tagProvider) {
+        mConsole.write(raw, MessageAdapter.MSG_RCV, name, apdu, tagProvider);
     }
 
     @Override
     public void onOkay(final String message) {
-        mConsole.write(message, MessageAdapter.MSG_OKAY, null, null);
+        mConsole.write(message, MessageAdapter.MSG_OKAY, null);
     }
 
     @Override
     public void onError(final String message) {
-        mConsole.write(message, MessageAdapter.MSG_ERROR, null, null);
+        mConsole.write(message, MessageAdapter.MSG_ERROR, null);
     }
 
     @Override
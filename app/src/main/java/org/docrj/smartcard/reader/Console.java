@@ -19,6 +19,9 @@
 
 package org.docrj.smartcard.reader;
 
+import java.util.regex.Pattern;
+
+import org.docrj.smartcard.emv.TagProvider;
 
 import android.app.Activity;
 import android.content.Context;
@@ -30,13 +33,19 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.text.Html;
 import android.widget.ListView;
-import android.support.v7.widget.ShareActionProvider;
 import android.widget.ViewSwitcher;
 
-public class Console implements MessageAdapter.UiCallbacks {
+public class Console implements MessageAdapter.UiCallbacks, MessageSink.Callbacks,
+        LazyShareActionProvider.OnPrepareShareListener {
 
     private static final String TAG = LaunchActivity.TAG;
 
+    private static final String SESSION_NAME = "console-";
+    // file names of the session journals of the consoles, as passed to
+    // FileShareActivity: console-<test mode>-<generation>
+    private static final Pattern SESSION_FILE_NAME =
+            Pattern.compile(SESSION_NAME + "[0-9]+-[0-9]+");
+
     private static final int VIEW_IMAGE = 0;
     private static final int VIEW_MESSAGES = 1;
 
@@ -49,9 +58,21 @@ public class Console implements MessageAdapter.UiCallbacks {
     private ViewSwitcher mSwitcher;
 
     private MessageAdapter mMsgAdapter;
+    // batches messages written from the xcvr threads
+    private MessageSink mMsgSink;
     private int mMsgPos;
 
-    private ShareActionProvider mShareProvider;
+    private LazyShareActionProvider mShareProvider;
+    // true if messages changed since the share intent was last set
+    private boolean mShareIntentStale = true;
+
+    /**
+     * Whether fileName names a console's session journal; anything else
+     * could name files outside the journal directory
+     */
+    static boolean isSessionFileName(String fileName) {
+        return SESSION_FILE_NAME.matcher(fileName).matches();
+    }
 
     public Console(Activity activity, Bundle inState, int testMode,
                    ListView listView, ViewSwitcher switcher) {
@@ -64,8 +85,10 @@ public class Console implements MessageAdapter.UiCallbacks {
         mEditor = ss.edit();
         mHandler = new Handler();
 
-        mMsgAdapter = new MessageAdapter(activity.getLayoutInflater(), inState, this);
+        mMsgAdapter = new MessageAdapter(activity.getLayoutInflater(), inState, this,
+                SESSION_NAME + testMode);
         listView.setAdapter(mMsgAdapter);
+        mMsgSink = new MessageSink(mMsgAdapter, this);
 
         mSwitcher = switcher;
         if (switcher != null) {
@@ -87,8 +110,14 @@ public class Console implements MessageAdapter.UiCallbacks {
         mEditor.commit();
     }
 
+    public void onDestroy() {
+        if (mMsgAdapter != null) {
+            mMsgSink.flush();
+            mMsgAdapter.close();
+        }
+    }
+
     public void onResume() {
-        setShareIntent();
         SharedPreferences ss = mActivity.getSharedPreferences("prefs", Context.MODE_PRIVATE);
         mMsgPos = ss.getInt("msg_pos", 0);
         // this delay is a bit hacky; would be better to extend ListView
@@ -108,53 +137,61 @@ public class Console implements MessageAdapter.UiCallbacks {
         mActivity.startActivity(i);
     }
 
-    public void setShareProvider(ShareActionProvider sp) {
+    public void setShareProvider(LazyShareActionProvider sp) {
         mShareProvider = sp;
+        mShareIntentStale = true;
+        sp.setOnPrepareShareListener(this);
+    }
+
+    @Override
+    public void onPrepareShare(LazyShareActionProvider source) {
+        setShareIntent();
     }
 
     public void onSaveInstanceState(Bundle outstate) {
         //outstate.putInt("msg_pos", mListView.getLastVisiblePosition());
         if (mMsgAdapter != null) {
+            // include messages still waiting for the next frame
+            mMsgSink.flush();
             mMsgAdapter.onSaveInstanceState(outstate);
         }
     }
 
-    public void write(final String text, final int type, final String name, final String parsed) {
+    public void write(String text, int type, String name) {
+        write(text, type, name, null, null);
+    }
+
+    // apdu is the raw command or response, if any; a response is parsed
+    // with tagProvider, if not null
+    public void write(String text, int type, String name, byte[] apdu,
+            TagProvider tagProvider) {
         if (mMsgAdapter != null) {
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mMsgAdapter.addMessage(text, type, name, parsed);
-                    setShareIntent();
-                }
-            });
+            mMsgSink.postMessage(text, type, name, apdu, tagProvider);
         }
     }
 
     public void writeSeparator() {
-        if (mMsgAdapter != null && mMsgAdapter.getCount() > 0) {
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mMsgAdapter.addSeparator();
-                }
-            });
+        if (mMsgAdapter != null) {
+            mMsgSink.postSeparator();
         }
     }
 
+    @Override
+    public void onFlushed(boolean cleared) {
+        if (cleared) {
+            clearShareIntent();
+        }
+        // share intent is rebuilt when the menu is next shown
+        mShareIntentStale = true;
+    }
+
     public boolean hasMessages() {
         return mMsgAdapter != null && mMsgAdapter.getCount() > 0;
     }
 
     public void clear() {
         if (mMsgAdapter != null) {
-            mActivity.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mMsgAdapter.clearMessages();
-                    clearShareIntent();
-                }
-            });
+            mMsgSink.postClear();
         }
     }
 
@@ -205,8 +242,10 @@ public class Console implements MessageAdapter.UiCallbacks {
         mListView.smoothScrollToPosition(mMsgPos);
     }
 
+    // builds the share document, if messages changed since it was last
+    // built; called when the share submenu is about to be shown
     public void setShareIntent() {
-        if (mMsgAdapter != null && mShareProvider != null) {
+        if (mMsgAdapter != null && mShareProvider != null && mShareIntentStale) {
             Intent sendIntent = new Intent();
             sendIntent.setAction(Intent.ACTION_SEND);
             //Log.d(TAG, mMsgAdapter.getShareMsgsHtml());
@@ -215,7 +254,13 @@ public class Console implements MessageAdapter.UiCallbacks {
             String subject = mActivity.getString(R.string.app_name) + ": " + mActivity.getTitle();
             sendIntent.putExtra(Intent.EXTRA_SUBJECT, subject);
             sendIntent.setType("text/html");
+            // lets FileShareActivity export the messages in other formats
+            if (mMsgAdapter.flushSession()) {
+                sendIntent.putExtra(SessionExporter.EXTRA_SESSION, mMsgAdapter.getSessionFileName());
+                sendIntent.putExtra(SessionExporter.EXTRA_SESSION_COUNT, mMsgAdapter.getCount());
+            }
             mShareProvider.setShareIntent(sendIntent);
+            mShareIntentStale = false;
         }
     }
 
@@ -223,5 +268,6 @@ public class Console implements MessageAdapter.UiCallbacks {
         if (mShareProvider != null) {
             mShareProvider.setShareIntent(null);
         }
+        mShareIntentStale = true;
     }
 }
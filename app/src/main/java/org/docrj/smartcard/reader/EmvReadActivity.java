@@ -20,7 +20,6 @@
 package org.docrj.smartcard.reader;
 
 import android.support.v4.widget.DrawerLayout;
-import android.support.v7.widget.ShareActionProvider;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -45,6 +44,7 @@ import android.widget.ViewSwitcher;
 import com.afollestad.materialdialogs.AlertDialogWrapper;
 
 import org.docrj.smartcard.emv.EMVTerminal;
+import org.docrj.smartcard.emv.TagProvider;
 
 
 public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiCallbacks,
@@ -92,8 +92,8 @@ public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiC
         mConsole = new Console(this, savedInstanceState, TEST_MODE_EMV_READ, listView, switcher);
         mNfcManager = new NfcManager(this, this);
 
-        ApduParser.init(this);
-        EMVTerminal.loadProperties(getResources());
+        AndroidLogger.install();
+        EMVTerminal.loadProperties(new RawResourceLoader(getResources()));
 
         // persistent "shared preferences"
         SharedPreferences ss = getSharedPreferences("prefs", Context.MODE_PRIVATE);
@@ -107,6 +107,7 @@ public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiC
         mShowMsgSeparators = prefs.getBoolean("pref_show_separators", true);
         String tapFeedback = prefs.getString("pref_tap_feedback", "1");
         mTapFeedback = Integer.valueOf(tapFeedback);
+        setTerminalProfile(prefs);
 
         mVibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
     }
@@ -127,6 +128,15 @@ public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiC
         } else if (key.equals("pref_tap_feedback")) {
             String tapFeedback = prefs.getString("pref_tap_feedback", "1");
             mTapFeedback = Integer.valueOf(tapFeedback);
+        } else if (key.equals("pref_terminal_profile")) {
+            setTerminalProfile(prefs);
+        }
+    }
+
+    private void setTerminalProfile(SharedPreferences prefs) {
+        String profile = prefs.getString("pref_terminal_profile", EMVTerminal.DEFAULT_PROFILE);
+        if (!EMVTerminal.setProfile(profile)) {
+            EMVTerminal.setProfile(EMVTerminal.DEFAULT_PROFILE);
         }
     }
 
@@ -155,6 +165,12 @@ public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiC
         mNfcManager.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        mConsole.onDestroy();
+        super.onDestroy();
+    }
+
     @Override
     public void onBackPressed() {
         if (mNavDrawer.onBackPressed()) {
@@ -191,7 +207,7 @@ public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiC
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.activity_emv_read, menu);
         MenuItem item = menu.findItem(R.id.menu_share_msgs);
-        mConsole.setShareProvider((ShareActionProvider) MenuItemCompat.getActionProvider(item));
+        mConsole.setShareProvider((LazyShareActionProvider) MenuItemCompat.getActionProvider(item));
         return true;
     }
 
@@ -262,29 +278,31 @@ public class EmvReadActivity extends AppCompatActivity implements ReaderXcvr.UiC
         if (isoDep == null) {
             onError(getString(R.string.wrong_tag_err));
         } else {
-            ReaderXcvr xcvr = new PaymentReaderXcvr(isoDep, "", this, TEST_MODE_EMV_READ);
+            ReaderXcvr xcvr = new PaymentReaderXcvr(new IsoDepTransport(isoDep), "", this,
+                    new ResourceMessages(getResources()), false);
             new Thread(xcvr).start();
         }
     }
 
     @Override
-    public void onMessageSend(final String raw, final String name) {
-        mConsole.write(raw, MessageAdapter.MSG_SEND, name, null);
+    public void onMessageSend(final String raw, final String name, final byte[] apdu) {
+        mConsole.write(raw, MessageAdapter.MSG_SEND, name, apdu, null);
     }
 
     @Override
-    public void onMessageRcv(final String raw, final String name, final String parsed) {
-        mConsole.write(raw, MessageAdapter.MSG_RCV, name, parsed);
+    public void onMessageRcv(final String raw, final String name, final byte[] apdu,
+            final TagProvider tagProvider) {
+        mConsole.write(raw, MessageAdapter.MSG_RCV, name, apdu, tagProvider);
     }
 
     @Override
     public void onOkay(final String message) {
-        mConsole.write(message, MessageAdapter.MSG_OKAY, null, null);
+        mConsole.write(message, MessageAdapter.MSG_OKAY, null);
     }
 
     @Override
     public void onError(final String message) {
-        mConsole.write(message, MessageAdapter.MSG_ERROR, null, null);
+        mConsole.write(message, MessageAdapter.MSG_ERROR, null);
     }
 
     @Override
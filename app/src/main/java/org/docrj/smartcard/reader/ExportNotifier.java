@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+/**
+ * Shows the progress of a session export in a notification, and the result
+ * in a toast; the activity that started the export is usually gone by then
+ */
+class ExportNotifier implements SessionExporter.Listener {
+    private static final String TAG = LaunchActivity.TAG;
+
+    private static final String CHANNEL_ID = "export";
+
+    private final Context mContext;
+    private final NotificationManager mNotificationManager;
+    private final NotificationCompat.Builder mBuilder;
+    private final int mNotificationId;
+
+    ExportNotifier(Context context, File file) {
+        mContext = context.getApplicationContext();
+        mNotificationManager = (NotificationManager)
+                mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    mContext.getString(R.string.log_to_file), NotificationManager.IMPORTANCE_LOW);
+            mNotificationManager.createNotificationChannel(channel);
+        }
+        mBuilder = new NotificationCompat.Builder(mContext, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentTitle(mContext.getString(R.string.log_to_file))
+                .setContentText(file.getName())
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+        mNotificationId = file.getName().hashCode();
+    }
+
+    @Override
+    public void onProgress(File file, int done, int total) {
+        mBuilder.setProgress(total, done, false);
+        mNotificationManager.notify(mNotificationId, mBuilder.build());
+    }
+
+    @Override
+    public void onExported(File file) {
+        mNotificationManager.cancel(mNotificationId);
+        Util.showToast(mContext, mContext.getString(R.string.saved_to, file.getName()));
+
+        // add file to media library for viewing via mtp
+        Intent scanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
+        scanIntent.setData(Uri.fromFile(file));
+        mContext.sendBroadcast(scanIntent);
+    }
+
+    @Override
+    public void onExportFailed(File file, IOException e) {
+        mNotificationManager.cancel(mNotificationId);
+        Log.e(TAG, "failed to write file: " + e.toString());
+        Util.showToast(mContext, mContext.getString(R.string.save_exception));
+    }
+}
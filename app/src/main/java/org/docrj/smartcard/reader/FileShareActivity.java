@@ -20,19 +20,12 @@
 package org.docrj.smartcard.reader;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 
 import android.app.Activity;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
 import android.content.Intent;
-import android.view.Gravity;
-import android.widget.Toast;
-import android.text.Html;
+import android.preference.PreferenceManager;
 import android.text.Spanned;
 import android.util.Log;
 
@@ -50,24 +43,34 @@ public class FileShareActivity extends Activity {
             "text/html".equals(intent.getType())) {
             // check external storage
             if (isExternalStorageWritable()) {
-                // write string to file
-                try {
-                    File file = new File(getExternalFilesDir(null),
-                        "smartcard_reader_" + System.currentTimeMillis() + ".html");
-                    Log.d(TAG, "abs file path: " + file.getAbsolutePath());
-                    OutputStream os = new FileOutputStream(file);
-                    OutputStreamWriter osw = new OutputStreamWriter(os);
-                    osw.write(Html.toHtml(text));
-                    osw.close();
-                    Util.showToast(this, getString(R.string.saved_to, file.getName()));
+                // the console's session journal; the html in the intent has
+                // only the latest messages, so it is only used without one
+                String session = intent.getStringExtra(SessionExporter.EXTRA_SESSION);
+                int count = intent.getIntExtra(SessionExporter.EXTRA_SESSION_COUNT, 0);
+                // this activity takes SEND intents from any app, so the
+                // session must be one of the console's, in the journal
+                // directory; the scanner checks the count against it
+                if (session != null && !Console.isSessionFileName(session)) {
+                    Log.w(TAG, "ignoring session " + session);
+                    session = null;
+                }
+                int format = Integer.valueOf(PreferenceManager.getDefaultSharedPreferences(this)
+                        .getString("pref_log_format", "0"));
+                if (session == null) {
+                    format = SessionExporter.FORMAT_HTML;
+                }
 
-                    // add file to media library for viewing via mtp
-                    Intent scanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-                    scanIntent.setData(Uri.fromFile(file));
-                    sendBroadcast(scanIntent);
-                } catch (IOException e) {
-                    Log.e(TAG, "failed to write file: " + e.toString());
-                    Util.showToast(this, getString(R.string.save_exception));
+                // written in the background; the notifier reports progress
+                // and the result after this activity is gone
+                File file = new File(getExternalFilesDir(null), "smartcard_reader_" +
+                        System.currentTimeMillis() + SessionExporter.getExtension(format));
+                Log.d(TAG, "abs file path: " + file.getAbsolutePath());
+                ExportNotifier notifier = new ExportNotifier(this, file);
+                if (session == null) {
+                    SessionExporter.exportHtml(text, file, notifier);
+                } else {
+                    SessionExporter.export(new File(getFilesDir(), SessionJournal.DIR), session,
+                            count, format, file, notifier);
                 }
             } else {
                 Util.showToast(this, getString(R.string.save_not_mounted));
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.io.IOException;
+
+import org.docrj.smartcard.iso7816.CardLostException;
+import org.docrj.smartcard.iso7816.CardTransport;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.IsoDep;
+
+/**
+ * CardTransport over an NFC IsoDep tag; TagLostException is thrown on as
+ * CardLostException
+ */
+public class IsoDepTransport implements CardTransport {
+
+    private final IsoDep mIsoDep;
+
+    public IsoDepTransport(IsoDep isoDep) {
+        if (isoDep == null) {
+            throw new IllegalArgumentException("Param isoDep cannot be null");
+        }
+        mIsoDep = isoDep;
+    }
+
+    public IsoDep getIsoDep() {
+        return mIsoDep;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        try {
+            mIsoDep.connect();
+        } catch (TagLostException e) {
+            throw new CardLostException(e);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mIsoDep.isConnected();
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        try {
+            return mIsoDep.transceive(command);
+        } catch (TagLostException e) {
+            throw new CardLostException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIsoDep.close();
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return mIsoDep.getMaxTransceiveLength();
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return mIsoDep.isExtendedLengthApduSupported();
+    }
+
+    @Override
+    public int getTimeout() {
+        return mIsoDep.getTimeout();
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        mIsoDep.setTimeout(timeout);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import android.content.Context;
+import android.support.v7.widget.ShareActionProvider;
+import android.view.SubMenu;
+
+/**
+ * ShareActionProvider that asks for its share intent just before the share
+ * submenu is shown, so the (possibly large) document being shared is only
+ * built when the user goes to share it
+ */
+public class LazyShareActionProvider extends ShareActionProvider {
+
+    public interface OnPrepareShareListener {
+        // call setShareIntent() if the intent is out of date
+        void onPrepareShare(LazyShareActionProvider source);
+    }
+
+    private OnPrepareShareListener mListener;
+
+    public LazyShareActionProvider(Context context) {
+        super(context);
+    }
+
+    public void setOnPrepareShareListener(OnPrepareShareListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void onPrepareSubMenu(SubMenu subMenu) {
+        if (mListener != null) {
+            mListener.onPrepareShare(this);
+        }
+        super.onPrepareSubMenu(subMenu);
+    }
+}
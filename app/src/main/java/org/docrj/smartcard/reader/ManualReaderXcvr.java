@@ -21,27 +21,28 @@ package org.docrj.smartcard.reader;
 
 import java.io.IOException;
 
+import org.docrj.smartcard.iso7816.ApduParser;
+import org.docrj.smartcard.iso7816.CardLostException;
+import org.docrj.smartcard.iso7816.CardTransport;
 import org.docrj.smartcard.iso7816.ResponseApdu;
 import org.docrj.smartcard.iso7816.SelectApdu;
 import org.docrj.smartcard.reader.R;
 import org.docrj.smartcard.util.Util;
 
-import android.nfc.TagLostException;
-import android.nfc.tech.IsoDep;
 import android.util.Log;
 
 public class ManualReaderXcvr extends OtherReaderXcvr implements ReaderXcvr.UiListener {
 
     final Object mDisconnectWaiter = new Object();
 
-    public ManualReaderXcvr(IsoDep isoDep, String aid, UiCallbacks uiCallbacks) {
-        super(isoDep, aid, uiCallbacks);
+    public ManualReaderXcvr(CardTransport transport, String aid, UiCallbacks uiCallbacks) {
+        super(transport, aid, uiCallbacks);
     }
 
     @Override
     public void run() {
         try {
-            mIsoDep.connect();
+            mTransport.connect();
             mUiCallbacks.clearMessages();
             mUiCallbacks.onOkay(mContext.getString(R.string.manual_connected));
 
@@ -55,13 +56,16 @@ public class ManualReaderXcvr extends OtherReaderXcvr implements ReaderXcvr.UiLi
                 // should not happen
                 Log.e(TAG, "interrupted exception!");
             }
-        } catch (TagLostException e) {
+        } catch (CardLostException e) {
             mUiCallbacks.onError(mContext.getString(R.string.tag_lost_err));
         } catch (IOException e) {
             mUiCallbacks.onError(e.getMessage());
         } finally {
+            // selects only happen once connected, so there are no checks
+            // to wait for ahead of the errors above
+            finishChecks();
             try {
-                mIsoDep.close();
+                mTransport.close();
             } catch (IOException e) {
             }
         }
@@ -73,11 +77,11 @@ public class ManualReaderXcvr extends OtherReaderXcvr implements ReaderXcvr.UiLi
         mAidBytes = Util.hexToBytes(aid);
 
         ResponseApdu rspApdu = null;
-        if (mIsoDep.isConnected()) {
+        if (mTransport.isConnected()) {
             try {
                 Log.d(TAG, "select app: " + mAid);
                 rspApdu = sendAndRcv(new SelectApdu(mAidBytes), true);
-            } catch (TagLostException e) {
+            } catch (CardLostException e) {
                 mUiCallbacks.onError(mContext.getString(R.string.tag_lost_err));
             } catch (IOException e) {
                 mUiCallbacks.onError(e.getMessage());
@@ -88,7 +92,7 @@ public class ManualReaderXcvr extends OtherReaderXcvr implements ReaderXcvr.UiLi
 
         if (rspApdu == null) {
             try {
-                mIsoDep.close();
+                mTransport.close();
             } catch (IOException e) {
             }
             synchronized (mDisconnectWaiter) {
@@ -19,12 +19,22 @@
 
 package org.docrj.smartcard.reader;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.docrj.smartcard.emv.EMVTags;
+import org.docrj.smartcard.emv.TagProvider;
+import org.docrj.smartcard.iso7816.TLVException;
+import org.docrj.smartcard.iso7816.TLVNode;
+import org.docrj.smartcard.iso7816.TLVUtil;
+
 import android.content.Context;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -45,73 +55,237 @@ public class MessageAdapter extends BaseAdapter {
     public static final int MSG_RCV = 2;
     public static final int MSG_BREAK = 3;
 
+    // chars of parsed text kept for messages the user has opened
+    private static final int PARSED_CACHE_CHARS = 64 * 1024;
+
     private class Message {
         private String text;
         private int type;
         private String name;
-        private String parsed;
+        // raw command or response apdu, if any
+        private byte[] apdu;
+        // response data is pretty printed on demand with tagProvider; null
+        // if there is nothing to parse
+        private TagProvider tagProvider;
+        private long time;
 
-        Message(String text, int type, String name, String parsed) {
+        Message(String text, int type, String name, byte[] apdu, TagProvider tagProvider,
+                long time) {
             this.text = text;
             this.type = type;
             this.name = name;
-            this.parsed = parsed;
+            this.apdu = apdu;
+            this.tagProvider = tagProvider;
+            this.time = time;
         }
 
-        Message(int type) {
+        Message(int type, long time) {
             this.type = type;
+            this.time = time;
+        }
+
+        boolean hasParsed() {
+            return tagProvider != null;
+        }
+
+        // rough heap footprint, for the window budget
+        int estimateSize() {
+            return 64 + 2 * (length(text) + length(name)) + ((apdu == null) ? 0 : apdu.length);
+        }
+
+        private int length(String s) {
+            return (s == null) ? 0 : s.length();
         }
     };
 
     private LayoutInflater mLayoutInflater;
     private Context mContext;
     private UiCallbacks mUiCallbacks;
-    private List<Message> mMessages = new ArrayList<Message>(100);
-    private StringBuilder mHtmlBuilder = new StringBuilder(2400);
+    // every message is appended here; the journal is what pages messages
+    // in as the list is scrolled, and restores them without going through
+    // the instance state. null if the journal can't be used.
+    private SessionJournal mJournal;
+    private int mCount;
+    // decoded messages by position, within the console_window_kb budget
+    private final LruCache<Integer, Message> mWindow;
+    // messages that can't be paged, added after the journal failed
+    private final SparseArray<Message> mPinned = new SparseArray<Message>();
+    // parsed text by position
+    private final LruCache<Integer, String> mParsedCache =
+            new LruCache<Integer, String>(PARSED_CACHE_CHARS) {
+        @Override
+        protected int sizeOf(Integer position, String parsed) {
+            return parsed.length();
+        }
+    };
 
-    public MessageAdapter(LayoutInflater layoutInflater, Bundle instate, UiCallbacks uiCallbacks) {
+    /**
+     * @param sessionName names the session journal; one per console
+     */
+    public MessageAdapter(LayoutInflater layoutInflater, Bundle instate, UiCallbacks uiCallbacks,
+            String sessionName) {
         mLayoutInflater = layoutInflater;
         mContext = layoutInflater.getContext();
         mUiCallbacks = uiCallbacks;
-        if (instate != null) {
-            // restore state
-            ArrayList<String> text = instate.getStringArrayList("msg_text");
-            ArrayList<Integer> type = instate.getIntegerArrayList("msg_type");
-            ArrayList<String> name = instate.getStringArrayList("msg_name");
-            ArrayList<String> parsed = instate.getStringArrayList("msg_parsed");
-            for (int i = 0; i < text.size(); i++) {
-                Message msg = new Message(text.get(i), type.get(i),
-                        name.get(i), parsed.get(i));
-                mMessages.add(msg);
-                updateShareMsgsHtml(msg);
+        mWindow = new LruCache<Integer, Message>(
+                mContext.getResources().getInteger(R.integer.console_window_kb) * 1024) {
+            @Override
+            protected int sizeOf(Integer position, Message msg) {
+                return msg.estimateSize();
             }
+        };
+
+        // restore state: the journal generation and the saved count of
+        // messages in it; without saved state, a new session is started
+        int count = (instate == null) ? 0 : instate.getInt("msg_count", 0);
+        long generation = (instate == null) ? 0 : instate.getLong("msg_generation", 0);
+        try {
+            mJournal = SessionJournal.open(new File(mContext.getFilesDir(), SessionJournal.DIR),
+                    sessionName, generation, count);
+            mCount = mJournal.size();
+        } catch (IOException e) {
+            Log.e(TAG, "unable to open session journal " + sessionName, e);
         }
     }
 
     public void onSaveInstanceState(Bundle outstate) {
-        ArrayList<String> text = new ArrayList<String>(mMessages.size());
-        ArrayList<Integer> type = new ArrayList<Integer>(mMessages.size());
-        ArrayList<String> name = new ArrayList<String>(mMessages.size());
-        ArrayList<String> parsed = new ArrayList<String>(mMessages.size());
-        for (Message msg : mMessages) {
-            text.add(msg.text);
-            type.add(msg.type);
-            name.add(msg.name);
-            parsed.add(msg.parsed);
-        }
-        outstate.putStringArrayList("msg_text", text);
-        outstate.putIntegerArrayList("msg_type", type);
-        outstate.putStringArrayList("msg_name", name);
-        outstate.putStringArrayList("msg_parsed", parsed);
+        int count = 0;
+        long generation = 0;
+        if (mJournal != null) {
+            try {
+                mJournal.flush();
+                count = mJournal.size();
+                generation = mJournal.getGeneration();
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+        }
+        outstate.putInt("msg_count", count);
+        outstate.putLong("msg_generation", generation);
+    }
+
+    /**
+     * Writes out the session journal, so that it can be read by an exporter;
+     * returns false if the journal can't be used
+     */
+    public boolean flushSession() {
+        if (mJournal != null) {
+            try {
+                mJournal.flush();
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+        }
+        return mJournal != null;
+    }
+
+    /**
+     * Names the files of the session journal's current generation, for
+     * SessionJournal.Scanner; null if the journal can't be used
+     */
+    public String getSessionFileName() {
+        return (mJournal != null) ? mJournal.getFileName() : null;
+    }
+
+    public void close() {
+        if (mJournal != null) {
+            try {
+                mJournal.close();
+            } catch (IOException e) {
+                Log.e(TAG, "unable to close session journal", e);
+            }
+            mJournal = null;
+        }
+    }
+
+    private void onJournalError(IOException e) {
+        // positions in the journal no longer match the messages, so stop
+        // using it; messages written from here on aren't restored
+        Log.e(TAG, "session journal error", e);
+        close();
+    }
+
+    // returns false if msg couldn't be journaled
+    private boolean journal(Message msg) {
+        if (mJournal != null) {
+            try {
+                mJournal.append(msg.type, msg.time, msg.hasParsed(),
+                        EMVTags.getResolverKey(msg.tagProvider), msg.name, msg.text, msg.apdu);
+                return true;
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param cache false to read a message that isn't in memory without
+     *        adding it to the window (eg. when exporting every message)
+     */
+    private Message getMessage(int position, boolean cache) {
+        Message msg = mPinned.get(position);
+        if (msg == null) {
+            msg = mWindow.get(position);
+        }
+        if (msg == null) {
+            msg = readMessage(position);
+            if (cache) {
+                mWindow.put(position, msg);
+            }
+        }
+        return msg;
+    }
+
+    private Message readMessage(int position) {
+        if (mJournal != null) {
+            try {
+                SessionJournal.Record r = mJournal.read(position);
+                TagProvider tagProvider = r.parsable ? EMVTags.getResolver(r.tagKey) : null;
+                return new Message(r.text, r.type, r.name, r.apdu, tagProvider, r.time);
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+        }
+        return new Message(mContext.getString(R.string.err_msg_prefix) +
+                mContext.getString(R.string.restore_msg_err), MSG_ERROR, "", null, null, 0);
     }
 
     public void clearMessages() {
-        mMessages.clear();
-        mHtmlBuilder.setLength(0);
+        removeMessages();
+        notifyDataSetChanged();
+    }
+
+    public void addMessage(String text, int type, String name, byte[] apdu,
+            TagProvider tagProvider) {
+        appendMessage(text, type, name, apdu, tagProvider);
+        notifyDataSetChanged();
+    }
+
+    public void addSeparator() {
+        appendSeparator();
         notifyDataSetChanged();
     }
 
-    public void addMessage(String text, int type, String name, String parsed) {
+    // the following don't call notifyDataSetChanged(), so that MessageSink
+    // can apply a batch of changes and notify once
+
+    void removeMessages() {
+        mCount = 0;
+        mWindow.evictAll();
+        mPinned.clear();
+        mParsedCache.evictAll();
+        if (mJournal != null) {
+            try {
+                mJournal.clear();
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+        }
+    }
+
+    void appendMessage(String text, int type, String name, byte[] apdu,
+            TagProvider tagProvider) {
         String textPrefix = "";
         String nameSuffix = "";
         switch (type) {
@@ -133,64 +307,139 @@ public class MessageAdapter extends BaseAdapter {
         String newText = textPrefix + text;
         String newName = (name == null) ? "" : name + " " + nameSuffix;
 
-        Message msg = new Message(newText, type, newName,
-            (parsed == null) ? "" : parsed);
-        mMessages.add(msg);
-        updateShareMsgsHtml(msg);
-        notifyDataSetChanged();
+        add(new Message(newText, type, newName, apdu, tagProvider, System.currentTimeMillis()));
     }
 
-    public void addSeparator() {
-        Message msg = new Message(MSG_BREAK);
-        mMessages.add(msg);
-        updateShareMsgsHtml(msg);
-        notifyDataSetChanged();
+    void appendSeparator() {
+        add(new Message(MSG_BREAK, System.currentTimeMillis()));
     }
 
-    private static String parsedToHtml(Message msg) {
+    private void add(Message msg) {
+        int position = mCount++;
+        if (journal(msg)) {
+            mWindow.put(position, msg);
+        } else {
+            mPinned.put(position, msg);
+        }
+    }
+
+    /**
+     * Returns the parsed text of msg, or "" if it has none; pretty printed
+     * on first use. Text formatted for a view is kept in an LRU cache, text
+     * formatted for export is not, so sharing doesn't evict what was viewed.
+     */
+    private String getParsed(int position, Message msg, boolean cache) {
+        if (!msg.hasParsed()) {
+            return "";
+        }
+        String parsed = mParsedCache.get(position);
+        if (parsed == null) {
+            parsed = prettyPrintResponse(msg.name, msg.apdu, msg.tagProvider);
+            if (cache) {
+                mParsedCache.put(position, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Pretty prints the data of a response apdu; may be called from any
+     * thread (eg. by SessionExporter)
+     */
+    static String prettyPrintResponse(String name, byte[] apdu, TagProvider tagProvider) {
+        try {
+            // response data, without the status word
+            return TLVUtil.prettyPrintAPDUResponse(TLVNode.parse(apdu, 0, apdu.length - 2,
+                    tagProvider));
+        } catch (TLVException e) {
+            // showRcv checks the data, so only if it missed something
+            Log.e(TAG, "unable to parse " + name, e);
+            return "unable to parse: " + e.getMessage();
+        }
+    }
+
+    private static String parsedToHtml(Message msg, String parsed) {
         StringBuilder sb = new StringBuilder(1200);
         sb.append("<p style= 'font-family:courier new;'>");
-        if (!msg.parsed.isEmpty()) {
+        if (!parsed.isEmpty()) {
             String name = (msg.type == MSG_SEND || msg.type == MSG_RCV) ?
                     "<b>" + msg.name + ":</b><br/><br/>" : "";
-            String parsed = msg.parsed.replace("\n", "<br/>");
-            sb.append(name + parsed);
+            sb.append(name + parsed.replace("\n", "<br/>"));
         }
         sb.append("</p>");
         return sb.toString();
     }
 
-    private void updateShareMsgsHtml(Message msg) {
-        if (msg.type == MSG_BREAK) {
-            mHtmlBuilder.append("<p style= 'font-family:courier new;'>=====</p>");
+    /**
+     * Appends a message as it is shared: its text and, if it has any, its
+     * parsed text; may be called from any thread (eg. by SessionExporter)
+     */
+    static void appendShareMsgHtml(StringBuilder out, int type, String name, String text,
+            String parsed) {
+        if (type == MSG_BREAK) {
+            out.append("<p style= 'font-family:courier new;'>=====</p>");
             return;
         }
-        String name = (msg.type == MSG_SEND || msg.type == MSG_RCV) ?
-                "<b>" + msg.name + " (raw):</b><br/><br/>" : "";
-        String text = msg.text.replace("-->", "&#45;&#45;&gt;").replace("<--", "&lt;&#45;&#45;");
-        mHtmlBuilder.append("<p style= 'font-family:courier new;'>" + name + text);
-        if (!msg.parsed.isEmpty()) {
-            name = (name.isEmpty()) ? "" : name.replace("(raw)", "(parsed)");
-            String parsed = msg.parsed.replace("\n", "<br/>");
-            mHtmlBuilder.append("<br/><br/>" + name + parsed);
+        String label = (type == MSG_SEND || type == MSG_RCV) ?
+                "<b>" + name + " (raw):</b><br/><br/>" : "";
+        text = text.replace("-->", "&#45;&#45;&gt;").replace("<--", "&lt;&#45;&#45;");
+        out.append("<p style= 'font-family:courier new;'>").append(label).append(text);
+        if (!parsed.isEmpty()) {
+            label = (label.isEmpty()) ? "" : label.replace("(raw)", "(parsed)");
+            out.append("<br/><br/>").append(label).append(parsed.replace("\n", "<br/>"));
         }
-        mHtmlBuilder.append("</p>");
+        out.append("</p>");
     }
 
+    /**
+     * Returns the html of the latest messages, as many as fit in the
+     * console_window_kb budget, since it is built on the UI thread and
+     * passed in the share intent; if earlier messages are left out, it says
+     * so.
+     * Saving to a file exports the whole session from the journal, on
+     * SessionExporter's thread.
+     */
     public String getShareMsgsHtml() {
-        String html = mHtmlBuilder.toString();
+        int budget = mContext.getResources().getInteger(R.integer.console_window_kb) * 1024 / 2;
+        // built from the last message back, then joined in order
+        List<String> latest = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder(1024);
+        int length = 0;
+        int first = mCount;
+        while (first > 0) {
+            Message msg = getMessage(first - 1, false);
+            sb.setLength(0);
+            appendShareMsgHtml(sb, msg.type, msg.name, msg.text,
+                    getParsed(first - 1, msg, false));
+            if (length + sb.length() > budget && first < mCount) {
+                break;
+            }
+            latest.add(sb.toString());
+            length += sb.length();
+            first--;
+        }
+
+        StringBuilder html = new StringBuilder(length + 128);
+        if (first > 0) {
+            html.append("<p><i>")
+                    .append(mContext.getString(R.string.share_msgs_omitted, first))
+                    .append("</i></p>");
+        }
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            html.append(latest.get(i));
+        }
         Log.d(TAG, "length: " + html.length());
-        return html;
+        return html.toString();
     }
 
     @Override
     public int getCount() {
-        return mMessages == null ? 0 : mMessages.size();
+        return mCount;
     }
 
     @Override
     public Object getItem(int position) {
-        return mMessages.get(position);
+        return getMessage(position, true);
     }
 
     @Override
@@ -227,7 +476,7 @@ public class MessageAdapter extends BaseAdapter {
         separator.setVisibility(View.GONE);
 
         // handling based on presence of parsed message contents
-        if (msg.parsed.isEmpty()) {
+        if (!msg.hasParsed()) {
             btn.setEnabled(false);
             btn.setBackground(null);
             img.setVisibility(View.GONE);
@@ -270,9 +519,10 @@ public class MessageAdapter extends BaseAdapter {
         public void onClick(View v) {
             Message msg = (Message)getItem(position);
             Bundle b = new Bundle();
+            String parsed = getParsed(position, msg, true);
             b.putString("name", msg.name);
-            b.putString("text", msg.parsed);
-            b.putString("html", parsedToHtml(msg));
+            b.putString("text", parsed);
+            b.putString("html", parsedToHtml(msg, parsed));
             mUiCallbacks.onViewParsedMsg(b);
         }
     };
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.docrj.smartcard.emv.TagProvider;
+
+import android.view.Choreographer;
+
+/**
+ * Queues console output from the xcvr threads and hands it to the
+ * MessageAdapter in batches, at most once per frame, so that a burst of
+ * messages (eg. an EMV read) costs one notifyDataSetChanged() and layout
+ * pass instead of one per message
+ *
+ * The post methods are lock-free and may be called from any thread;
+ * entries are applied in the order they were posted, on the UI thread.
+ */
+class MessageSink implements Choreographer.FrameCallback {
+
+    public interface Callbacks {
+        // called on the UI thread after a batch changed the adapter
+        void onFlushed(boolean cleared);
+    }
+
+    private static final int OP_MESSAGE = 0;
+    private static final int OP_SEPARATOR = 1;
+    private static final int OP_CLEAR = 2;
+
+    private static final class Entry {
+        final int op;
+        final String text;
+        final int type;
+        final String name;
+        final byte[] apdu;
+        final TagProvider tagProvider;
+
+        Entry(int op, String text, int type, String name, byte[] apdu,
+                TagProvider tagProvider) {
+            this.op = op;
+            this.text = text;
+            this.type = type;
+            this.name = name;
+            this.apdu = apdu;
+            this.tagProvider = tagProvider;
+        }
+    }
+
+    private static final Entry SEPARATOR = new Entry(OP_SEPARATOR, null, 0, null, null, null);
+    private static final Entry CLEAR = new Entry(OP_CLEAR, null, 0, null, null, null);
+
+    private final MessageAdapter mAdapter;
+    private final Callbacks mCallbacks;
+    private final Choreographer mChoreographer;
+
+    private final ConcurrentLinkedQueue<Entry> mQueue = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+
+    /**
+     * Must be created on the UI thread, whose Choreographer runs the flushes
+     */
+    MessageSink(MessageAdapter adapter, Callbacks callbacks) {
+        mAdapter = adapter;
+        mCallbacks = callbacks;
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    void postMessage(String text, int type, String name, byte[] apdu,
+            TagProvider tagProvider) {
+        post(new Entry(OP_MESSAGE, text, type, name, apdu, tagProvider));
+    }
+
+    // dropped if there are no messages above it when it is applied
+    void postSeparator() {
+        post(SEPARATOR);
+    }
+
+    void postClear() {
+        post(CLEAR);
+    }
+
+    private void post(Entry entry) {
+        mQueue.offer(entry);
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        flush();
+    }
+
+    /**
+     * Applies everything posted so far; UI thread only
+     */
+    void flush() {
+        // reset first, so that entries posted while draining get a new frame
+        mFlushScheduled.set(false);
+
+        boolean changed = false;
+        boolean cleared = false;
+        Entry entry;
+        while ((entry = mQueue.poll()) != null) {
+            switch (entry.op) {
+            case OP_MESSAGE:
+                mAdapter.appendMessage(entry.text, entry.type, entry.name, entry.apdu,
+                        entry.tagProvider);
+                changed = true;
+                break;
+            case OP_SEPARATOR:
+                if (mAdapter.getCount() > 0) {
+                    mAdapter.appendSeparator();
+                    changed = true;
+                }
+                break;
+            case OP_CLEAR:
+                mAdapter.removeMessages();
+                changed = true;
+                cleared = true;
+                break;
+            }
+        }
+        if (changed) {
+            mAdapter.notifyDataSetChanged();
+            mCallbacks.onFlushed(cleared);
+        }
+    }
+}
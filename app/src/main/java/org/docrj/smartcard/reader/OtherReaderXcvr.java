@@ -21,44 +21,40 @@ package org.docrj.smartcard.reader;
 
 import java.io.IOException;
 
+import org.docrj.smartcard.iso7816.ApduParser;
+import org.docrj.smartcard.iso7816.CardLostException;
+import org.docrj.smartcard.iso7816.CardTransport;
 import org.docrj.smartcard.iso7816.ResponseApdu;
 import org.docrj.smartcard.iso7816.SelectApdu;
 
 import android.content.Context;
-import android.nfc.TagLostException;
-import android.nfc.tech.IsoDep;
 import android.util.Log;
 
 public class OtherReaderXcvr extends ReaderXcvr {
 
-    public OtherReaderXcvr(IsoDep isoDep, String aid, UiCallbacks uiCallbacks) {
-        super(isoDep, aid, uiCallbacks);
+    protected Context mContext;
+
+    public OtherReaderXcvr(CardTransport transport, String aid, UiCallbacks uiCallbacks) {
+        this(transport, aid, uiCallbacks, (Context) uiCallbacks);
     }
 
-    public OtherReaderXcvr(IsoDep isoDep, String aid, UiCallbacks uiCallbacks, Context context) {
-        super(isoDep, aid, uiCallbacks, context);
+    public OtherReaderXcvr(CardTransport transport, String aid, UiCallbacks uiCallbacks, Context context) {
+        super(transport, aid, uiCallbacks, new ResourceMessages(context.getResources()));
+        mContext = context;
     }
 
     @Override
     public void run() {
         boolean err = false;
         try {
-            mIsoDep.connect();
-
-            Log.d(TAG, "select app: " + mAid);
-            ResponseApdu rspApdu = sendAndRcv(new SelectApdu(mAidBytes), true);
-
-            if (rspApdu.isStatus(SW_NO_ERROR)) {
-                mUiCallbacks.onOkay(mContext.getString(R.string.select_app_ok,
-                        rspApdu.getSW1SW2()));
-            } else {
-                mUiCallbacks.onError(
-                        mContext.getString(R.string.select_app_err,
-                                rspApdu.getSW1SW2(),
-                                ApduParser.parse(false, rspApdu.toBytes())));
+            try {
+                mTransport.connect();
+                selectApp();
+                mTransport.close();
+            } finally {
+                finishChecks();
             }
-            mIsoDep.close();
-        } catch (TagLostException e) {
+        } catch (CardLostException e) {
             mUiCallbacks.onError(mContext.getString(R.string.tag_lost_err));
             err = true;
         } catch (IOException e) {
@@ -67,4 +63,21 @@ public class OtherReaderXcvr extends ReaderXcvr {
         }
         mUiCallbacks.onFinish(err);
     }
+
+    // select mAid over the connected transport and report the status
+    protected ResponseApdu selectApp() throws IOException {
+        Log.d(TAG, "select app: " + mAid);
+        ResponseApdu rspApdu = sendAndRcv(new SelectApdu(mAidBytes), true);
+
+        if (rspApdu.isStatus(SW_NO_ERROR)) {
+            mUiCallbacks.onOkay(mContext.getString(R.string.select_app_ok,
+                    rspApdu.getSW1SW2()));
+        } else {
+            mUiCallbacks.onError(
+                    mContext.getString(R.string.select_app_err,
+                            rspApdu.getSW1SW2(),
+                            ApduParser.parse(false, rspApdu.toBytes())));
+        }
+        return rspApdu;
+    }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.docrj.smartcard.util.ResourceLoader;
+
+import android.content.res.Resources;
+
+/**
+ * Serves the core library's data files from res/raw
+ */
+public class RawResourceLoader implements ResourceLoader {
+
+    private final Resources mResources;
+
+    public RawResourceLoader(Resources resources) {
+        mResources = resources;
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        int id;
+        switch (name) {
+            case TERMINAL_PROPERTIES:
+                id = R.raw.terminal_properties;
+                break;
+            default:
+                throw new FileNotFoundException("No raw resource for " + name);
+        }
+        return mResources.openRawResource(id);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import android.content.res.Resources;
+
+/**
+ * Serves the console messages of the core xcvrs from the string resources
+ */
+public class ResourceMessages implements ReaderXcvr.Messages {
+
+    private final Resources mResources;
+
+    public ResourceMessages(Resources resources) {
+        mResources = resources;
+    }
+
+    @Override
+    public String getString(String name, Object... formatArgs) {
+        int id;
+        switch (name) {
+            case TAG_LOST_ERR:
+                id = R.string.tag_lost_err;
+                break;
+            case SELECT_PPSE_OK:
+                id = R.string.select_ppse_ok;
+                break;
+            case SELECT_PPSE_ERR:
+                id = R.string.select_ppse_err;
+                break;
+            case SELECT_APP_OK:
+                id = R.string.select_app_ok;
+                break;
+            case SELECT_APP_ERR:
+                id = R.string.select_app_err;
+                break;
+            case GPO_OK:
+                id = R.string.gpo_ok;
+                break;
+            case GPO_ERR:
+                id = R.string.gpo_err;
+                break;
+            case GPO_AIP_AFL_ERR:
+                id = R.string.gpo_aip_afl_err;
+                break;
+            case READ_REC_OK:
+                id = R.string.read_rec_ok;
+                break;
+            case READ_REC_ERR:
+                id = R.string.read_rec_err;
+                break;
+            default:
+                throw new IllegalArgumentException("No string resource for " + name);
+        }
+        return mResources.getString(id, formatArgs);
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.docrj.smartcard.emv.EMVTags;
+import org.docrj.smartcard.util.Util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Html;
+import android.text.Spanned;
+
+/**
+ * Writes console sessions to files on a background thread, streaming the
+ * messages from the session journal through a buffered FileChannel
+ *
+ * Formats:
+ * <ul>
+ * <li>FORMAT_HTML: the messages as they are shared, raw and parsed; the
+ *     share intent carries only the latest, so this is the whole session</li>
+ * <li>FORMAT_JSON_LINES: one object per message, with the fields
+ *     seq, time (ms since the epoch), type, name, text and apdu (hex)</li>
+ * <li>FORMAT_CSV: the same fields, with a header row (RFC 4180)</li>
+ * <li>FORMAT_TRACE: the raw command and response apdus only, as below</li>
+ * </ul>
+ *
+ * Trace layout (big-endian): the magic "SCRT" and a short version (1),
+ * then per apdu a long time (ms since the epoch), a byte direction
+ * (TRACE_COMMAND or TRACE_RESPONSE), an int length and the apdu bytes.
+ *
+ * Exports run one at a time; the listener is called on the main thread.
+ */
+final class SessionExporter {
+
+    // extras of the share intent naming the files of the console's session
+    // journal (SessionJournal.getFileName()) and the messages to export
+    static final String EXTRA_SESSION = "org.docrj.smartcard.reader.extra.SESSION";
+    static final String EXTRA_SESSION_COUNT = "org.docrj.smartcard.reader.extra.SESSION_COUNT";
+
+    // values of the pref_log_format setting
+    static final int FORMAT_HTML = 0;
+    static final int FORMAT_JSON_LINES = 1;
+    static final int FORMAT_CSV = 2;
+    static final int FORMAT_TRACE = 3;
+
+    static final int TRACE_COMMAND = 0;
+    static final int TRACE_RESPONSE = 1;
+    private static final byte[] TRACE_MAGIC = { 'S', 'C', 'R', 'T' };
+    private static final short TRACE_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // messages between progress reports
+    private static final int PROGRESS_STEP = 64;
+
+    interface Listener {
+        void onProgress(File file, int done, int total);
+        void onExported(File file);
+        void onExportFailed(File file, IOException e);
+    }
+
+    private static final ExecutorService sExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "session-export");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    static String getExtension(int format) {
+        switch (format) {
+        case FORMAT_JSON_LINES:
+            return ".jsonl";
+        case FORMAT_CSV:
+            return ".csv";
+        case FORMAT_TRACE:
+            return ".trace";
+        default:
+            return ".html";
+        }
+    }
+
+    /**
+     * Writes html shared by the console, for when its session journal
+     * can't be used
+     */
+    static void exportHtml(final Spanned text, final File file, final Listener listener) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ChannelOutput out = null;
+                try {
+                    out = new ChannelOutput(file);
+                    out.write(Html.toHtml(text));
+                    out.close();
+                    out = null;
+                    postExported(file, listener);
+                } catch (IOException e) {
+                    postFailed(file, e, listener);
+                } finally {
+                    closeQuietly(out);
+                }
+            }
+        });
+    }
+
+    /**
+     * Exports the first count messages of the session journal files called
+     * session (SessionJournal.getFileName()) in dir
+     */
+    static void export(final File dir, final String session, final int count,
+            final int format, final File file, final Listener listener) {
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SessionJournal.Scanner scanner = null;
+                ChannelOutput out = null;
+                try {
+                    scanner = new SessionJournal.Scanner(dir, session, count);
+                    out = new ChannelOutput(file);
+                    writeSession(scanner, format, out, file, listener);
+                    out.close();
+                    out = null;
+                    postExported(file, listener);
+                } catch (IOException e) {
+                    postFailed(file, e, listener);
+                } finally {
+                    closeQuietly(out);
+                    closeQuietly(scanner);
+                }
+            }
+        });
+    }
+
+    private static void writeSession(SessionJournal.Scanner scanner, int format,
+            ChannelOutput out, File file, Listener listener) throws IOException {
+        StringBuilder line = new StringBuilder(1024);
+        if (format == FORMAT_HTML) {
+            out.write("<html><head><meta charset=\"utf-8\"></head><body>\n");
+        } else if (format == FORMAT_CSV) {
+            out.write("seq,time,type,name,text,apdu\r\n");
+        } else if (format == FORMAT_TRACE) {
+            out.put(TRACE_MAGIC, 0, TRACE_MAGIC.length);
+            out.putShort(TRACE_VERSION);
+        }
+
+        int total = scanner.size();
+        for (int seq = 0; scanner.hasNext(); seq++) {
+            SessionJournal.Record r = scanner.next();
+            line.setLength(0);
+            switch (format) {
+            case FORMAT_HTML:
+                String parsed = "";
+                if (r.parsable && r.apdu != null) {
+                    parsed = MessageAdapter.prettyPrintResponse(r.name, r.apdu,
+                            EMVTags.getResolver(r.tagKey));
+                }
+                MessageAdapter.appendShareMsgHtml(line, r.type, r.name, r.text, parsed);
+                line.append('\n');
+                out.write(line);
+                break;
+            case FORMAT_JSON_LINES:
+                appendJson(line, seq, r);
+                out.write(line);
+                break;
+            case FORMAT_CSV:
+                appendCsv(line, seq, r);
+                out.write(line);
+                break;
+            case FORMAT_TRACE:
+                if (r.apdu != null &&
+                        (r.type == MessageAdapter.MSG_SEND || r.type == MessageAdapter.MSG_RCV)) {
+                    out.putLong(r.time);
+                    out.putByte(r.type == MessageAdapter.MSG_SEND ? TRACE_COMMAND : TRACE_RESPONSE);
+                    out.putInt(r.apdu.length);
+                    out.put(r.apdu, 0, r.apdu.length);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown export format " + format);
+            }
+            if ((seq + 1) % PROGRESS_STEP == 0) {
+                postProgress(file, seq + 1, total, listener);
+            }
+        }
+        if (format == FORMAT_HTML) {
+            out.write("</body></html>\n");
+        }
+        postProgress(file, total, total, listener);
+    }
+
+    private static String getTypeName(int type) {
+        switch (type) {
+        case MessageAdapter.MSG_SEND:
+            return "command";
+        case MessageAdapter.MSG_RCV:
+            return "response";
+        case MessageAdapter.MSG_OKAY:
+            return "okay";
+        case MessageAdapter.MSG_ERROR:
+            return "error";
+        case MessageAdapter.MSG_BREAK:
+            return "separator";
+        default:
+            return Integer.toString(type);
+        }
+    }
+
+    private static void appendJson(StringBuilder sb, int seq, SessionJournal.Record r) {
+        sb.append("{\"seq\":").append(seq);
+        sb.append(",\"time\":").append(r.time);
+        sb.append(",\"type\":");
+        appendJsonString(sb, getTypeName(r.type));
+        sb.append(",\"name\":");
+        appendJsonString(sb, r.name);
+        sb.append(",\"text\":");
+        appendJsonString(sb, r.text);
+        sb.append(",\"apdu\":");
+        if (r.apdu == null) {
+            sb.append("null");
+        } else {
+            sb.append('"');
+            Util.appendHex(sb, r.apdu, 0, r.apdu.length, true);
+            sb.append('"');
+        }
+        sb.append("}\n");
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append("\\u00");
+                    Util.appendHexByte(sb, c);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void appendCsv(StringBuilder sb, int seq, SessionJournal.Record r) {
+        sb.append(seq).append(',').append(r.time).append(',');
+        sb.append(getTypeName(r.type)).append(',');
+        appendCsvField(sb, r.name);
+        sb.append(',');
+        appendCsvField(sb, r.text);
+        sb.append(',');
+        if (r.apdu != null) {
+            Util.appendHex(sb, r.apdu, 0, r.apdu.length, true);
+        }
+        sb.append("\r\n");
+    }
+
+    // quoted only if needed, with quotes doubled
+    private static void appendCsvField(StringBuilder sb, String s) {
+        if (s == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = (c == ',' || c == '"' || c == '\r' || c == '\n');
+        }
+        if (!quote) {
+            sb.append(s);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static void postProgress(final File file, final int done, final int total,
+            final Listener listener) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onProgress(file, done, total);
+            }
+        });
+    }
+
+    private static void postExported(final File file, final Listener listener) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExported(file);
+            }
+        });
+    }
+
+    private static void postFailed(final File file, final IOException e,
+            final Listener listener) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExportFailed(file, e);
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // already failed
+            }
+        }
+    }
+
+    /**
+     * Text (as utf-8) and binary output to a file, through a buffer that
+     * is written to the channel when full
+     */
+    private static final class ChannelOutput implements Closeable {
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder mEncoder = StandardCharsets.UTF_8.newEncoder();
+
+        ChannelOutput(File file) throws IOException {
+            mChannel = new FileOutputStream(file).getChannel();
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer in = CharBuffer.wrap(text);
+            mEncoder.reset();
+            while (true) {
+                CoderResult result = mEncoder.encode(in, mBuf, true);
+                if (result.isUnderflow()) {
+                    result = mEncoder.flush(mBuf);
+                }
+                if (result.isUnderflow()) {
+                    break;
+                } else if (result.isOverflow()) {
+                    drain();
+                } else {
+                    result.throwException();
+                }
+            }
+        }
+
+        void putByte(int b) throws IOException {
+            ensure(1);
+            mBuf.put((byte) b);
+        }
+
+        void putShort(short s) throws IOException {
+            ensure(2);
+            mBuf.putShort(s);
+        }
+
+        void putInt(int i) throws IOException {
+            ensure(4);
+            mBuf.putInt(i);
+        }
+
+        void putLong(long l) throws IOException {
+            ensure(8);
+            mBuf.putLong(l);
+        }
+
+        void put(byte[] bytes, int offset, int length) throws IOException {
+            if (length > mBuf.remaining()) {
+                drain();
+            }
+            if (length > mBuf.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes, offset, length));
+            } else {
+                mBuf.put(bytes, offset, length);
+            }
+        }
+
+        private void ensure(int n) throws IOException {
+            if (mBuf.remaining() < n) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            mBuf.flip();
+            writeFully(mBuf);
+            mBuf.clear();
+        }
+
+        private void writeFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                mChannel.write(buf);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                mChannel.close();
+            }
+        }
+    }
+
+    private SessionExporter() {
+    }
+}
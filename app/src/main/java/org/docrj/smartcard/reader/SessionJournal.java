@@ -0,0 +1,442 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import android.util.Log;
+
+/**
+ * Append-only binary log of the console messages of a session, so that
+ * they survive the activity being recreated without going through the
+ * instance state Bundle (and the binder transaction size limit)
+ *
+ * A session is two files: the log, with one record per message, and an
+ * index with the offset of each record as an int. Records are read back
+ * one at a time through a read-only mapping of the log, so restoring a
+ * session only decodes the rows that are actually shown.
+ *
+ * Each time a session is started or cleared it gets a new generation, with
+ * files of its own (see getFileName()); those of earlier generations are
+ * deleted, but a Scanner that has them open keeps reading them, so the
+ * console never writes under an export in progress.
+ *
+ * Record layout (big-endian):
+ * <pre>
+ *   byte   message type
+ *   byte   flags: FLAG_PARSABLE if the response data can be parsed
+ *   long   time, in ms since the epoch
+ *   long   tag resolver key of the response data (EMVTags.getResolverKey())
+ *   int    name length in bytes, or -1 if null; name (utf-8)
+ *   int    text length in bytes, or -1 if null; text (utf-8)
+ *   int    apdu length, or -1 if none; raw command or response apdu
+ * </pre>
+ *
+ * Appends are buffered and written out when the buffer fills up or on
+ * flush(). Not thread safe; the console uses it from the UI thread.
+ * Scanner reads a session from another thread, eg. to export it.
+ */
+final class SessionJournal implements Closeable {
+
+    private static final String TAG = LaunchActivity.TAG;
+
+    // directory of the journals, in the app's files dir
+    static final String DIR = "sessions";
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int HEADER_SIZE = 1 + 1 + 8 + 8 + 4 + 4 + 4;
+
+    private static final int FLAG_PARSABLE = 0x01;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    static final class Record {
+        final int type;
+        final long time;
+        final boolean parsable;
+        final long tagKey;
+        final String name;
+        final String text;
+        final byte[] apdu;
+
+        Record(int type, long time, boolean parsable, long tagKey, String name, String text,
+                byte[] apdu) {
+            this.type = type;
+            this.time = time;
+            this.parsable = parsable;
+            this.tagKey = tagKey;
+            this.name = name;
+            this.text = text;
+            this.apdu = apdu;
+        }
+    }
+
+    /**
+     * Reads the first count records of a journal generation in order,
+     * through a buffered channel rather than a mapping, so that the console
+     * can keep appending to the journal meanwhile; if the journal was
+     * cleared before the scanner was opened, it throws a
+     * FileNotFoundException
+     */
+    static final class Scanner implements Closeable {
+        private final FileChannel mChannel;
+        private final int mCount;
+        private int mRead;
+        private ByteBuffer mBuf = ByteBuffer.allocate(4 * BUFFER_SIZE);
+        // size of the log when last checked; it only grows
+        private long mLogSize;
+
+        /**
+         * @param fileName the journal's getFileName()
+         * @param count number of records to read; at most the number
+         *     written out
+         */
+        Scanner(File dir, String fileName, int count) throws IOException {
+            mChannel = new FileInputStream(new File(dir, fileName + LOG_SUFFIX)).getChannel();
+            long entries = new File(dir, fileName + INDEX_SUFFIX).length() / 4;
+            if (count < 0 || count > entries) {
+                mChannel.close();
+                throw new IOException("Session journal " + fileName + " has " + entries +
+                        " records, not " + count);
+            }
+            mCount = count;
+            mBuf.flip();
+        }
+
+        int size() {
+            return mCount;
+        }
+
+        boolean hasNext() {
+            return mRead < mCount;
+        }
+
+        Record next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // fixed fields, then the name, text and apdu lengths and bytes;
+            // the lengths are checked against the log before anything is
+            // allocated for them
+            long start = mChannel.position() - mBuf.remaining();
+            int size = 1 + 1 + 8 + 8;
+            for (int i = 0; i < 3; i++) {
+                ensure(size + 4);
+                int length = mBuf.getInt(mBuf.position() + size);
+                size += 4;
+                if (length < -1 || !isInLog(start + size + Math.max(length, 0))) {
+                    throw new IOException("Session journal record " + mRead + " is corrupt");
+                }
+                size += Math.max(length, 0);
+            }
+            ensure(size);
+            mRead++;
+            return decode(mBuf);
+        }
+
+        private boolean isInLog(long end) throws IOException {
+            if (end > mLogSize) {
+                mLogSize = mChannel.size();
+            }
+            return end <= mLogSize;
+        }
+
+        // makes at least n bytes available from the buffer's position
+        private void ensure(int n) throws IOException {
+            if (mBuf.remaining() >= n) {
+                return;
+            }
+            if (n > mBuf.capacity()) {
+                ByteBuffer buf = ByteBuffer.allocate(Math.max(n, mBuf.capacity() * 2));
+                buf.put(mBuf);
+                mBuf = buf;
+            } else {
+                mBuf.compact();
+            }
+            while (mBuf.position() < n) {
+                if (mChannel.read(mBuf) < 0) {
+                    throw new EOFException("Session journal ended after " + mRead + " of " +
+                            mCount + " records");
+                }
+            }
+            mBuf.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mChannel.close();
+        }
+    }
+
+    private final File mDir;
+    private final String mName;
+    private long mGeneration;
+    private RandomAccessFile mLog;
+    private RandomAccessFile mIndex;
+
+    // offsets of all records, including those not yet written out
+    private int[] mOffsets;
+    private int mCount;
+    private int mWrittenCount;
+    // size of the log including the pending records
+    private int mLogSize;
+
+    private ByteBuffer mPending = ByteBuffer.allocate(BUFFER_SIZE);
+    private MappedByteBuffer mMap;
+
+    private SessionJournal(File dir, String name, long generation, RandomAccessFile log,
+            RandomAccessFile index, int[] offsets, int count, int logSize) {
+        mDir = dir;
+        mName = name;
+        mGeneration = generation;
+        mLog = log;
+        mIndex = index;
+        mOffsets = offsets;
+        mCount = count;
+        mWrittenCount = count;
+        mLogSize = logSize;
+    }
+
+    /**
+     * Opens generation of the journal called name in dir, keeping its first
+     * count records (eg. the number there were when the instance state was
+     * saved) and dropping the rest; pass a count of 0 to start a new session
+     */
+    static SessionJournal open(File dir, String name, long generation, int count)
+            throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        String fileName = getFileName(name, generation);
+        if (count == 0 || !new File(dir, fileName + LOG_SUFFIX).exists()) {
+            generation = newGeneration(dir, name, generation);
+            fileName = getFileName(name, generation);
+            count = 0;
+        }
+        RandomAccessFile log = new RandomAccessFile(new File(dir, fileName + LOG_SUFFIX), "rw");
+        RandomAccessFile index = null;
+        try {
+            index = new RandomAccessFile(new File(dir, fileName + INDEX_SUFFIX), "rw");
+            int entries = (int) (index.length() / 4);
+            int keep = Math.min(count, entries);
+            int[] offsets = new int[Math.max(keep + 1, 64)];
+            // one more than we keep, if there is one, for the end of the last record
+            int mapped = Math.min(keep + 1, entries);
+            if (mapped > 0) {
+                MappedByteBuffer map = index.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        0, mapped * 4L);
+                map.asIntBuffer().get(offsets, 0, mapped);
+            }
+            long logSize = (keep == 0) ? 0 : (keep < entries) ? offsets[keep] : log.length();
+            if (logSize > log.length() || (keep > 0 && offsets[keep - 1] >= logSize)) {
+                throw new IOException("Session journal " + fileName + " is corrupt");
+            }
+            log.setLength(logSize);
+            index.setLength(keep * 4L);
+            return new SessionJournal(dir, name, generation, log, index, offsets, keep,
+                    (int) logSize);
+        } catch (IOException e) {
+            log.close();
+            if (index != null) {
+                index.close();
+            }
+            throw e;
+        }
+    }
+
+    // a later generation than the given one, with the files of all
+    // earlier ones deleted
+    private static long newGeneration(File dir, String name, long generation) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            String prefix = name + "-";
+            for (File file : files) {
+                if (file.getName().startsWith(prefix) && !file.delete()) {
+                    Log.w(TAG, "unable to delete " + file);
+                }
+            }
+        }
+        return Math.max(System.currentTimeMillis(), generation + 1);
+    }
+
+    private static String getFileName(String name, long generation) {
+        return name + "-" + generation;
+    }
+
+    /**
+     * Names the files of the current generation, for a Scanner
+     */
+    String getFileName() {
+        return getFileName(mName, mGeneration);
+    }
+
+    long getGeneration() {
+        return mGeneration;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    void append(int type, long time, boolean parsable, long tagKey, String name, String text,
+            byte[] apdu) throws IOException {
+        byte[] nameBytes = (name == null) ? null : name.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = (text == null) ? null : text.getBytes(StandardCharsets.UTF_8);
+        int size = HEADER_SIZE + length(nameBytes) + length(textBytes) + length(apdu);
+        if (size > mPending.remaining()) {
+            writePending();
+            if (size > mPending.capacity()) {
+                mPending = ByteBuffer.allocate(size);
+            }
+        }
+
+        mPending.put((byte) type).put((byte) (parsable ? FLAG_PARSABLE : 0))
+                .putLong(time).putLong(tagKey);
+        putBytes(mPending, nameBytes);
+        putBytes(mPending, textBytes);
+        putBytes(mPending, apdu);
+
+        if (mCount == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, mCount * 2);
+        }
+        mOffsets[mCount++] = mLogSize;
+        mLogSize += size;
+    }
+
+    Record read(int i) throws IOException {
+        if (i < 0 || i >= mCount) {
+            throw new IndexOutOfBoundsException("Record " + i + " of " + mCount);
+        }
+        if (i >= mWrittenCount) {
+            writePending();
+        }
+        int end = (i + 1 < mCount) ? mOffsets[i + 1] : mLogSize;
+        if (mMap == null || end > mMap.capacity()) {
+            // the log has grown since it was mapped
+            mMap = mLog.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, mLogSize);
+        }
+
+        ByteBuffer buf = mMap.duplicate();
+        buf.position(mOffsets[i]);
+        return decode(buf);
+    }
+
+    void flush() throws IOException {
+        writePending();
+    }
+
+    /**
+     * Starts a new generation; the files of this one are deleted
+     */
+    void clear() throws IOException {
+        mMap = null;
+        mPending.clear();
+        mCount = 0;
+        mWrittenCount = 0;
+        mLogSize = 0;
+        mLog.close();
+        mIndex.close();
+        mGeneration = newGeneration(mDir, mName, mGeneration);
+        String fileName = getFileName();
+        mLog = new RandomAccessFile(new File(mDir, fileName + LOG_SUFFIX), "rw");
+        mIndex = new RandomAccessFile(new File(mDir, fileName + INDEX_SUFFIX), "rw");
+    }
+
+    @Override
+    public void close() throws IOException {
+        mMap = null;
+        try {
+            writePending();
+        } finally {
+            mLog.close();
+            mIndex.close();
+        }
+    }
+
+    private void writePending() throws IOException {
+        mPending.flip();
+        FileChannel log = mLog.getChannel();
+        long pos = mLogSize - mPending.remaining();
+        while (mPending.hasRemaining()) {
+            pos += log.write(mPending, pos);
+        }
+        mPending.clear();
+
+        int n = mCount - mWrittenCount;
+        if (n > 0) {
+            ByteBuffer entries = ByteBuffer.allocate(n * 4);
+            entries.asIntBuffer().put(mOffsets, mWrittenCount, n);
+            FileChannel index = mIndex.getChannel();
+            pos = mWrittenCount * 4L;
+            while (entries.hasRemaining()) {
+                pos += index.write(entries, pos);
+            }
+            mWrittenCount = mCount;
+        }
+    }
+
+    private static Record decode(ByteBuffer buf) {
+        int type = buf.get();
+        boolean parsable = (buf.get() & FLAG_PARSABLE) != 0;
+        long time = buf.getLong();
+        long tagKey = buf.getLong();
+        byte[] nameBytes = getBytes(buf);
+        byte[] textBytes = getBytes(buf);
+        byte[] apdu = getBytes(buf);
+        return new Record(type, time, parsable, tagKey,
+                (nameBytes == null) ? null : new String(nameBytes, StandardCharsets.UTF_8),
+                (textBytes == null) ? null : new String(textBytes, StandardCharsets.UTF_8),
+                apdu);
+    }
+
+    private static int length(byte[] bytes) {
+        return (bytes == null) ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return bytes;
+    }
+}
@@ -90,6 +90,8 @@ public class SettingsFragment extends PreferenceFragment {
         });
 
         bindPreferenceSummaryToValue(findPreference("pref_tap_feedback"));
+        bindPreferenceSummaryToValue(findPreference("pref_log_format"));
+        bindPreferenceSummaryToValue(findPreference("pref_terminal_profile"));
     }
 
     /**
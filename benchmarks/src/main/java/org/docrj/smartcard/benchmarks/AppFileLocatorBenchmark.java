@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.docrj.smartcard.emv.AppElementaryFile;
+import org.docrj.smartcard.emv.AppFileLocator;
+import org.docrj.smartcard.iso7816.TLVNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes the AFL from each scheme's GPO response
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppFileLocatorBenchmark {
+
+    @Param({ "VISA", "MC", "AMEX", "DISCOVER" })
+    public String scheme;
+
+    private byte[] afl;
+
+    @Setup
+    public void setup() {
+        TLVNode gpo = TLVNode.parse(Corpus.get(scheme, "GPO"));
+        TLVNode format1 = gpo.find("80");
+        if (format1 != null) {
+            // aip (2 bytes) followed by the afl
+            byte[] value = format1.getValueBytes();
+            afl = Arrays.copyOfRange(value, 2, value.length);
+        } else {
+            afl = gpo.find("77/94").getValueBytes();
+        }
+    }
+
+    @Benchmark
+    public List<AppElementaryFile> decode() {
+        return new AppFileLocator(afl).getApplicationElementaryFiles();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.docrj.smartcard.util.Util;
+
+/**
+ * Response data (without SW1 SW2) for the messages of a contactless EMV
+ * read, for each of the main payment schemes
+ *
+ * The layouts follow what cards of each kernel return (Visa qVSDC,
+ * Mastercard M/Chip, Amex ExpressPay, Discover D-PAS); PANs are test PANs,
+ * and certificates, cryptograms and other card data are made up.
+ */
+public final class Corpus {
+
+    public static final String[] SCHEMES = { "VISA", "MC", "AMEX", "DISCOVER" };
+    public static final String[] MESSAGES = { "PPSE", "FCI", "GPO", "READ_RECORD" };
+
+    private static final Map<String, byte[]> payloads = new HashMap<>();
+
+    static {
+        put("VISA", "PPSE",
+                "6f30840e325041592e5359532e4444463031a51ebf0c1b61194f07a000000003" +
+                "1010500b5649534120435245444954870101");
+        put("VISA", "FCI",
+                "6f678407a0000000031010a55c500b56495341204352454449548701019f3818" +
+                "9f66049f02069f03069f1a0295055f2a029a039c019f37045f2d06656e667264" +
+                "659f1101019f120b5649534120435245444954bf0c139f5a0511084008409f0a" +
+                "080001050100000000");
+        put("VISA", "GPO",
+                "7781eb8202202094041801030157134761739001010010d22122011143804400" +
+                "000f5f20175649534120414351554952455220544553542f434152445f340101" +
+                "9f100706010a03a0a0009f2608c5b2d91f3e8a7c409f2701809f360200329f4b" +
+                "8180073c71a6db10457aafe4194e83b8ed22578cc1f62b6095caff34699ed308" +
+                "3d72a7dc11467bb0e51a4f84b9ee23588dc2f72c6196cb00356a9fd4093e73a8" +
+                "dd12477cb1e61b5085baef24598ec3f82d6297cc01366ba0d50a3f74a9de1348" +
+                "7db2e71c5186bbf0255a8fc4f92e6398cd02376ca1d60b4075aadf14497eb3e8" +
+                "1d529f6c0216009f6e0420700000");
+        put("VISA", "READ_RECORD",
+                "7081ca8f010992240b30557a9fc4e90e33587da2c7ec11365b80a5caef14395e" +
+                "83a8cdf2173c6186abd0f51a9f3201039081800b30557a9fc4e90e33587da2c7" +
+                "ec11365b80a5caef14395e83a8cdf2173c6186abd0f51a3f6489aed3f81d4267" +
+                "8cb1d6fb20456a8fb4d9fe23486d92b7dc01264b7095badf04294e7398bde207" +
+                "2c51769bc0e50a2f54799ec3e80d32577ca1c6eb10355a7fa4c9ee13385d82a7" +
+                "ccf1163b6085aacff4193e6388add2f71c41669f4701039f690901c5b2d91f3e" +
+                "8a00005f280208409f0702ff00");
+
+        put("MC", "PPSE",
+                "6f46840e325041592e5359532e4444463031a534bf0c3161184f07a000000004" +
+                "1010500a4d41535445524341524487010161154f07a000000004306050074d41" +
+                "455354524f870102");
+        put("MC", "FCI",
+                "6f318407a0000000041010a526500a4d4153544552434152448701015f2d0265" +
+                "6ebf0c0f9f4d020b0a9f6e0708400000303000");
+        put("MC", "GPO",
+                "771682021980941008010100100103011801020120010200");
+        put("MC", "READ_RECORD",
+                "7081b39f420208405f25032001015f24032512315a0854133300890200115f34" +
+                "01009f0702ffc08c219f02069f03069f1a0295055f2a029a039c019f37049f35" +
+                "019f45029f4c089f34038d0c910a8a0295059f37049f4c088e0e000000000000" +
+                "000042035e031f039f0d05b4508488009f0e0500000000009f0f05b470849800" +
+                "5f280208409f4a018257135413330089020011d25122011234567890000f5f20" +
+                "154d415354455243415244205445535420434152442f");
+
+        put("AMEX", "PPSE",
+                "6f36840e325041592e5359532e4444463031a524bf0c21611f4f08a000000025" +
+                "0108015010414d45524943414e2045585052455353870101");
+        put("AMEX", "FCI",
+                "6f2f8408a000000025010801a5235010414d45524943414e2045585052455353" +
+                "8701019f38069f35019f6e045f2d02656e");
+        put("AMEX", "GPO",
+                "800e1980080101001001030118010201");
+        put("AMEX", "READ_RECORD",
+                "70818d5f200e414d4558205445535420434152445711374245001751006d2512" +
+                "2011234512345f5f24032512315a08374245001751006f5f3401005f28020840" +
+                "9f0702ff009f0d05bc50bc88009f0e0500000000009f0f05bc78fcf8008c159f" +
+                "02069f03069f1a0295055f2a029a039c019f37048d058a029f37048e0e000000" +
+                "00000000001e0302031f009f08020001");
+
+        put("DISCOVER", "PPSE",
+                "6f2d840e325041592e5359532e4444463031a51bbf0c1861164f07a000000152" +
+                "30105008444953434f564552870101");
+        put("DISCOVER", "FCI",
+                "6f468407a0000001523010a53b5008444953434f5645528701019f38189f6604" +
+                "9f02069f03069f1a0295055f2a029a039c019f37045f2d02656ebf0c0b9f0a08" +
+                "0001050100000000");
+        put("DISCOVER", "GPO",
+                "776d820219009410080101001001020118020300200101009f360200149f2608" +
+                "3f8e2b0c1d4e5a6b9f10200105a0000300001000000000000000000000000000" +
+                "00000000000000000000009f27018057136510000000000125d2512201123456" +
+                "7800000f9f7d080102030405060708");
+        put("DISCOVER", "READ_RECORD",
+                "7081995f2012444953434f564552205445535420434152445a08651000000000" +
+                "01255f24032512315f25032001015f280208405f3401009f0702ff008c1e9f02" +
+                "069f03069f1a0295055f2a029a039c019f37049f35019f34039f45028d09910a" +
+                "8a0295059f37048e1200000000000000004203440341031e031f009f0d05f040" +
+                "0080009f0e0500100000009f0f05f0400098009f420208409f440102");
+    }
+
+    private static void put(String scheme, String message, String dataHex) {
+        payloads.put(scheme + "/" + message, Util.hexToBytes(dataHex));
+    }
+
+    /**
+     * @param scheme one of SCHEMES
+     * @param message one of MESSAGES
+     */
+    public static byte[] get(String scheme, String message) {
+        byte[] data = payloads.get(scheme + "/" + message);
+        if (data == null) {
+            throw new IllegalArgumentException("No payload for " + scheme + "/" + message);
+        }
+        return data.clone();
+    }
+
+    private Corpus() {
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.docrj.smartcard.emv.DOL;
+import org.docrj.smartcard.emv.EMVApp;
+import org.docrj.smartcard.emv.EMVTerminal;
+import org.docrj.smartcard.iso7816.TLVNode;
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.TagAndLength;
+import org.docrj.smartcard.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses the card's PDOL (or CDOL1 when the card has no PDOL, eg. MC) and
+ * builds the terminal's response to it, as done for GPO
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOLBenchmark {
+
+    @Param({ "VISA", "MC", "AMEX", "DISCOVER" })
+    public String scheme;
+
+    private byte[] dolBytes;
+    private DOL dol;
+    private EMVApp app;
+
+    @Setup
+    public void setup() {
+        RawResources.loadTerminal();
+
+        TLVNode fci = TLVNode.parse(Corpus.get(scheme, "FCI"));
+        TLVNode pdol = fci.find("6F/A5/9F38");
+        if (pdol != null) {
+            dolBytes = pdol.getValueBytes();
+        } else {
+            dolBytes = TLVNode.parse(Corpus.get(scheme, "READ_RECORD"))
+                    .find("70/8C").getValueBytes();
+        }
+        dol = new DOL(DOL.Type.PDOL, dolBytes);
+
+        app = new EMVApp();
+        app.setAid(Util.bytesToHex(fci.find("6F/84").getValueBytes()));
+    }
+
+    @Benchmark
+    public List<TagAndLength> parseTagAndLength() {
+        return TLVUtil.parseTagAndLength(dolBytes);
+    }
+
+    @Benchmark
+    public DOL newDOL() {
+        return new DOL(DOL.Type.PDOL, dolBytes);
+    }
+
+    @Benchmark
+    public byte[] constructDOLResponse() {
+        return EMVTerminal.constructDOLResponse(dol, app);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.docrj.smartcard.emv.AppElementaryFile;
+import org.docrj.smartcard.emv.EMVApp;
+import org.docrj.smartcard.emv.EMVTags;
+import org.docrj.smartcard.emv.TagProvider;
+import org.docrj.smartcard.iso7816.ReadRecordApdu;
+import org.docrj.smartcard.iso7816.ScriptedCard;
+import org.docrj.smartcard.iso7816.SelectApdu;
+import org.docrj.smartcard.iso7816.TLVNode;
+import org.docrj.smartcard.iso7816.Tag;
+import org.docrj.smartcard.reader.PaymentReaderXcvr;
+import org.docrj.smartcard.reader.ReaderXcvr;
+import org.docrj.smartcard.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the whole emv read of PaymentReaderXcvr (select ppse, then select,
+ * get processing options and read records for each app) against a
+ * ScriptedCard that answers with the Corpus responses, and reports the
+ * time per read
+ *
+ * With link=nfc each exchange is delayed as over a 106 kbit/s contactless
+ * link, so the time includes what the card spends in the field.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmvReadBenchmark {
+
+    private static final String PPSE_AID = "325041592E5359532E4444463031";
+    private static final String GPO_HEADER = "80A80000";
+    private static final byte[] SW_NO_ERROR = { (byte) 0x90, 0x00 };
+
+    // about 90us a byte at 106 kbit/s, and the card's processing time
+    private static final long NFC_FIXED_MICROS = 1000;
+    private static final long NFC_PER_BYTE_MICROS = 90;
+
+    @Param({ "VISA", "MC", "AMEX", "DISCOVER" })
+    public String scheme;
+
+    @Param({ "none", "nfc" })
+    public String link;
+
+    private ScriptedCard card;
+    private Console console;
+
+    @Setup
+    public void setup() {
+        RawResources.loadTerminal();
+        card = newCard(scheme);
+        if ("nfc".equals(link)) {
+            card.setLatency(NFC_FIXED_MICROS, NFC_PER_BYTE_MICROS);
+        }
+        console = new Console();
+
+        // a read that doesn't follow the script would only time the errors
+        read();
+        if (console.lastError != null) {
+            throw new IllegalStateException(scheme + " read failed: " + console.lastError);
+        }
+    }
+
+    @Benchmark
+    public int read() {
+        new PaymentReaderXcvr(card, "", console, console, false).run();
+        return console.messages.get();
+    }
+
+    // the corpus has one fci, gpo response and record per scheme, which
+    // each app listed in the ppse gets
+    private static ScriptedCard newCard(String scheme) {
+        byte[] ppse = Corpus.get(scheme, "PPSE");
+        byte[] fci = Corpus.get(scheme, "FCI");
+        byte[] gpo = Corpus.get(scheme, "GPO");
+        byte[] record = Corpus.get(scheme, "READ_RECORD");
+
+        EMVApp app = new EMVApp();
+        PaymentReaderXcvr.parseProcessingOpts(TLVNode.parse(gpo), app);
+
+        ScriptedCard card = new ScriptedCard();
+        card.add(new SelectApdu(Util.hexToBytes(PPSE_AID)).toBytes(), withStatus(ppse));
+        List<TLVNode> aids = new ArrayList<>();
+        find(TLVNode.parse(ppse), EMVTags.AID_CARD, aids);
+        for (TLVNode aid : aids) {
+            card.add(new SelectApdu(aid.getValueBytes()).toBytes(), withStatus(fci));
+            // the pdol data includes an unpredictable number
+            card.addMatchingHeader(Util.hexToBytes(GPO_HEADER), withStatus(gpo));
+            for (AppElementaryFile aef : app.getAppFileLocator().getApplicationElementaryFiles()) {
+                for (int rec = aef.getStartRecordNum(); rec <= aef.getEndRecordNum(); rec++) {
+                    card.add(new ReadRecordApdu(rec, aef.getSfi()).toBytes(), withStatus(record));
+                }
+            }
+        }
+        return card;
+    }
+
+    private static void find(TLVNode parent, Tag tag, List<TLVNode> found) {
+        for (TLVNode node : parent.getChildren()) {
+            if (node.isConstructed()) {
+                find(node, tag, found);
+            } else if (node.getTag().equals(tag)) {
+                found.add(node);
+            }
+        }
+    }
+
+    private static byte[] withStatus(byte[] data) {
+        byte[] rsp = new byte[data.length + SW_NO_ERROR.length];
+        System.arraycopy(data, 0, rsp, 0, data.length);
+        System.arraycopy(SW_NO_ERROR, 0, rsp, data.length, SW_NO_ERROR.length);
+        return rsp;
+    }
+
+    /**
+     * Counts what the xcvr reports; the read records are reported from its
+     * DisplayPipeline worker
+     */
+    private static final class Console implements ReaderXcvr.UiCallbacks, ReaderXcvr.Messages {
+
+        final AtomicInteger messages = new AtomicInteger();
+        volatile String lastError;
+
+        @Override
+        public void onMessageSend(String raw, String name, byte[] apdu) {
+            messages.incrementAndGet();
+        }
+
+        @Override
+        public void onMessageRcv(String raw, String name, byte[] apdu, TagProvider tagProvider) {
+            messages.incrementAndGet();
+        }
+
+        @Override
+        public void onOkay(String message) {
+            messages.incrementAndGet();
+        }
+
+        @Override
+        public void onError(String message) {
+            messages.incrementAndGet();
+            lastError = message;
+        }
+
+        @Override
+        public void onSeparator() {
+        }
+
+        @Override
+        public void clearMessages() {
+        }
+
+        @Override
+        public void setUserSelectListener(ReaderXcvr.UiListener callback) {
+        }
+
+        @Override
+        public void onFinish(boolean err) {
+        }
+
+        @Override
+        public String getString(String name, Object... formatArgs) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.docrj.smartcard.util.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hex codec in Util, on a READ RECORD response: the console's hex+ASCII
+ * dump and hex encoding into reused buffers (expected to allocate nothing),
+ * and decoding
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexCodecBenchmark {
+
+    @Param({ "VISA", "MC", "AMEX", "DISCOVER" })
+    public String scheme;
+
+    private byte[] data;
+    private String hex;
+    private final StringBuilder out = new StringBuilder(1024);
+    private char[] chars;
+    private byte[] decoded;
+
+    @Setup
+    public void setup() {
+        data = Corpus.get(scheme, "READ_RECORD");
+        hex = Util.bytesToHex(data);
+        chars = new char[data.length * 2];
+        decoded = new byte[data.length];
+    }
+
+    @Benchmark
+    public StringBuilder hexAndAscii() {
+        out.setLength(0);
+        return Util.appendHexAndAscii(out, data, 0, data.length);
+    }
+
+    @Benchmark
+    public StringBuilder wrappedHex() {
+        out.setLength(0);
+        return Util.appendWrappedHex(out, data, 0, data.length, 32, 7);
+    }
+
+    @Benchmark
+    public char[] encode() {
+        Util.encodeHex(data, 0, data.length, chars, 0, false);
+        return chars;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        Util.decodeHex(hex, decoded, 0);
+        return decoded;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.io.File;
+
+import org.docrj.smartcard.emv.EMVTerminal;
+import org.docrj.smartcard.util.FileResourceLoader;
+
+/**
+ * Serves the app's raw resources (app/src/main/res/raw) from the directory
+ * given by the smartcard.raw.dir system property, which the jmh task sets
+ */
+public class RawResources extends FileResourceLoader {
+
+    private static boolean terminalLoaded;
+
+    public RawResources() {
+        super(getDir());
+    }
+
+    private static File getDir() {
+        String dir = System.getProperty("smartcard.raw.dir");
+        if (dir == null) {
+            throw new IllegalStateException("System property smartcard.raw.dir not set");
+        }
+        return new File(dir);
+    }
+
+    /**
+     * Loads the terminal properties once per JVM
+     */
+    public static synchronized void loadTerminal() {
+        if (!terminalLoaded) {
+            EMVTerminal.loadProperties(new RawResources());
+            terminalLoaded = true;
+        }
+    }
+}
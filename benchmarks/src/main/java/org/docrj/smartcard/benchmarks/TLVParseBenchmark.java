@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.docrj.smartcard.iso7816.TLVCursor;
+import org.docrj.smartcard.iso7816.TLVEventParser;
+import org.docrj.smartcard.iso7816.TLVNode;
+import org.docrj.smartcard.iso7816.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decodes every data object of a response, resolving its tag, with each of
+ * the TLV parsers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLVParseBenchmark {
+
+    @Param({ "VISA", "MC", "AMEX", "DISCOVER" })
+    public String scheme;
+
+    @Param({ "PPSE", "FCI", "GPO", "READ_RECORD" })
+    public String message;
+
+    private byte[] data;
+    private TLVEventParser eventParser;
+    private Blackhole eventSink;
+
+    @Setup
+    public void setup() {
+        data = Corpus.get(scheme, message);
+        eventParser = new TLVEventParser(new TLVEventParser.Handler() {
+            @Override
+            public void startConstructed(Tag tag, int length) {
+                eventSink.consume(tag);
+            }
+
+            @Override
+            public void primitive(Tag tag, byte[] buf, int offset, int length) {
+                eventSink.consume(tag);
+            }
+
+            @Override
+            public void endConstructed(Tag tag) {
+            }
+        });
+    }
+
+    @Benchmark
+    public void tree(Blackhole bh) {
+        walk(TLVNode.parse(data), bh);
+    }
+
+    private static void walk(TLVNode parent, Blackhole bh) {
+        for (TLVNode node : parent.getChildren()) {
+            bh.consume(node.getTag());
+            if (node.isConstructed()) {
+                walk(node, bh);
+            }
+        }
+    }
+
+    @Benchmark
+    public void cursor(Blackhole bh) {
+        walk(new TLVCursor(data), bh);
+    }
+
+    private static void walk(TLVCursor cursor, Blackhole bh) {
+        while (cursor.next()) {
+            bh.consume(cursor.getTag());
+            if (cursor.isConstructed()) {
+                walk(cursor.children(), bh);
+            }
+        }
+    }
+
+    @Benchmark
+    public void events(Blackhole bh) {
+        eventSink = bh;
+        eventParser.reset();
+        eventParser.feed(data);
+        eventParser.end();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.docrj.smartcard.iso7816.TLVNode;
+import org.docrj.smartcard.iso7816.TLVPrettyPrinter;
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formats responses for the console: parsing included (as done for each
+ * received message), and from an already parsed tree into a reused buffer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLVPrettyPrintBenchmark {
+
+    @Param({ "VISA", "MC", "AMEX", "DISCOVER" })
+    public String scheme;
+
+    @Param({ "PPSE", "FCI", "GPO", "READ_RECORD" })
+    public String message;
+
+    private byte[] data;
+    private TLVNode root;
+    private final StringBuilder out = new StringBuilder(4096);
+
+    @Setup
+    public void setup() {
+        data = Corpus.get(scheme, message);
+        root = TLVNode.parse(data);
+    }
+
+    @Benchmark
+    public String prettyPrintAPDUResponse() {
+        return TLVUtil.prettyPrintAPDUResponse(data);
+    }
+
+    @Benchmark
+    public StringBuilder printParsed() {
+        out.setLength(0);
+        TLVPrettyPrinter.getDefault().print(root, 0, out);
+        return out;
+    }
+}
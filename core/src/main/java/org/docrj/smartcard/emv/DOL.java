@@ -25,6 +25,7 @@ package org.docrj.smartcard.emv;
 
 import org.docrj.smartcard.iso7816.TagAndLength;
 import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.Tag;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -54,6 +55,10 @@ import java.util.List;
  * In other words, a DOL is sent from the ICC. This DOL contains only Tag ID bytes and length bytes.
  * The Terminal constructs the response, which contains only the VALUES for these tags.
  *
+ * The tag ids and lengths are also kept in arrays, along with the total
+ * length of the response, so EMVTerminal.constructDOLResponse can fill a
+ * pre-sized array without walking the list.
+ *
  * TODO: check DOL processing on page 55
  */
 public class DOL {
@@ -85,14 +90,65 @@ public class DOL {
     @SuppressWarnings("unused")
     private Type type;
     private List<TagAndLength> tagAndLengthList = new ArrayList<TagAndLength>();
+    private final int[] tagIds;
+    private final int[] lengths;
+    private final int responseLength;
 
     public DOL(Type type, byte[] data){
         //Parse tags and lengths
+        this(type, TLVUtil.parseTagAndLength(data));
+    }
+
+    public DOL(Type type, byte[] data, TagProvider tagProvider){
+        this(type, TLVUtil.parseTagAndLength(data, tagProvider));
+    }
+
+    private DOL(Type type, List<TagAndLength> tagAndLengthList){
         this.type = type;
-        this.tagAndLengthList = TLVUtil.parseTagAndLength(data);
+        this.tagAndLengthList = tagAndLengthList;
+
+        int size = tagAndLengthList.size();
+        tagIds = new int[size];
+        lengths = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            TagAndLength tal = tagAndLengthList.get(i);
+            byte[] tagBytes = tal.getTag().getTagBytes();
+            tagIds[i] = TLVUtil.getTagId(tagBytes, 0, tagBytes.length);
+            lengths[i] = tal.getLength();
+            total += lengths[i];
+        }
+        responseLength = total;
     }
 
     public List<TagAndLength> getTagAndLengthList(){
         return Collections.unmodifiableList(tagAndLengthList);
     }
+
+    public int size() {
+        return tagIds.length;
+    }
+
+    /**
+     * Tag id of the i-th entry (see TLVUtil.getTagId), or
+     * TLVUtil.INVALID_TAG_ID if longer than 4 bytes
+     */
+    public int getTagId(int i) {
+        return tagIds[i];
+    }
+
+    public Tag getTag(int i) {
+        return tagAndLengthList.get(i).getTag();
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * Sum of the lengths, ie. the length of the terminal's response
+     */
+    public int getResponseLength() {
+        return responseLength;
+    }
 }
@@ -50,6 +50,8 @@ public class EMVApp extends SmartcardApp {
     private int mAppCurrencyCode = -1;
     private List<BERTLV> mUnkRecords = new ArrayList<BERTLV>();
     private List<BERTLV> mUnprocRecords = new ArrayList<BERTLV>();
+    // depends on aid and iin, built on first use
+    private TagProvider mTagResolver;
 
     public EMVApp() {
         super();
@@ -68,6 +70,7 @@ public class EMVApp extends SmartcardApp {
         if (app != null) {
             super.copy(app);
             mApi = app.getApi();
+            mTagResolver = null;
         }
     }
 
@@ -117,6 +120,23 @@ public class EMVApp extends SmartcardApp {
 
     public void setIssuerIdNumber(IssuerIdNumber issuerIdNumber) {
         mIssuerIdNumber = issuerIdNumber;
+        mTagResolver = null;
+    }
+
+    @Override
+    public void setAid(String aid) {
+        super.setAid(aid);
+        mTagResolver = null;
+    }
+
+    /**
+     * Tags as seen by this app, given its RID and IIN (see EMVTags.getResolver)
+     */
+    public TagProvider getTagResolver() {
+        if (mTagResolver == null) {
+            mTagResolver = EMVTags.getResolver(getAidBytes(), mIssuerIdNumber);
+        }
+        return mTagResolver;
     }
     
     public void setLogEntry(LogEntry logEntry) {
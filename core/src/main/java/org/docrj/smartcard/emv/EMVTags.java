@@ -26,15 +26,15 @@ package org.docrj.smartcard.emv;
 import org.docrj.smartcard.iso7816.TagValueType;
 import org.docrj.smartcard.iso7816.TagImpl;
 import org.docrj.smartcard.iso7816.Tag;
+import org.docrj.smartcard.iso7816.TLVUtil;
 
-import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.docrj.smartcard.emv.MCTags;
 import org.docrj.smartcard.emv.VISATags;
-import org.docrj.smartcard.util.ByteArrayWrapper;
+import org.docrj.smartcard.util.IntHashMap;
 import org.docrj.smartcard.util.Util;
 
 /**
@@ -48,12 +48,29 @@ import org.docrj.smartcard.util.Util;
  */
 public class EMVTags {
 
-    private static LinkedHashMap<IssuerIdNumber, LinkedHashMap<ByteArrayWrapper, Tag>> issuerToTagsMap =
-        new LinkedHashMap<IssuerIdNumber, LinkedHashMap<ByteArrayWrapper, Tag>>();
-    private static LinkedHashMap<ByteArrayWrapper, LinkedHashMap<ByteArrayWrapper, Tag>> paymentSystemToTagsMap =
-        new LinkedHashMap<ByteArrayWrapper, LinkedHashMap<ByteArrayWrapper, Tag>>();
+    // all registries are keyed by tag id (see TLVUtil.getTagId), so lookups don't allocate
+    private static IntHashMap<IntHashMap<Tag>> issuerToTagsMap = new IntHashMap<IntHashMap<Tag>>();
+    private static PaymentSystemTags[] paymentSystemToTagsMap = new PaymentSystemTags[0];
+
+    // assigned in the static block below, once all the tag constants exist
+    private static TagTable tags;
+
+    private static final UnknownTagCache unknownTags = new UnknownTagCache(256);
+
+    // merged tags per (RID, IIN) context, see getResolver(byte[], IssuerIdNumber)
+    private static final ConcurrentHashMap<Long, TagResolver> resolvers =
+            new ConcurrentHashMap<Long, TagResolver>();
+
+    private static class PaymentSystemTags {
+        final long rid;
+        final TagTable tags;
+
+        PaymentSystemTags(long rid, TagTable tags) {
+            this.rid = rid;
+            this.tags = tags;
+        }
+    }
 
-    private static LinkedHashMap<ByteArrayWrapper, Tag> tags = new LinkedHashMap<ByteArrayWrapper, Tag>();
     // one-byte tags
     // 7816-4 inter-industry data object for tag allocation authority
     public static final Tag UNIVERSAL_TAG_FOR_OID                   = new TagImpl("06", TagValueType.BINARY, "Object Identifier (OID)", "Universal tag for OID");
@@ -250,6 +267,18 @@ public class EMVTags {
         return tag;
     }
 
+    /**
+     * If the tag is not found, this method returns the "[UNHANDLED TAG]" for
+     * the tag id bytes in buf
+     */
+    public static Tag getNotNull(byte[] buf, int offset, int length) {
+        Tag tag = find(TLVUtil.getTagId(buf, offset, length));
+        if (tag == null) {
+            tag = unknownTags.intern(buf, offset, length);
+        }
+        return tag;
+    }
+
     public static Tag getNotNull(EMVApp app, Tag tag) {
         Tag tagFound = get(app, tag);
         if (tagFound == null) {
@@ -258,117 +287,198 @@ public class EMVTags {
         return tagFound;
     }
 
+    /**
+     * Returns the shared "[UNKNOWN TAG]" instance for 'tagBytes'
+     */
     public static Tag createUnknownTag(byte[] tagBytes) {
-        return new TagImpl(tagBytes, TagValueType.BINARY, "[UNKNOWN TAG]", "");
+        return unknownTags.intern(tagBytes);
+    }
+
+    /**
+     * Unknown tags seen so far, with hit/miss counts
+     */
+    public static UnknownTagCache getUnknownTagCache() {
+        return unknownTags;
     }
 
     /**
      * Returns null if Tag not found
      */
     public static Tag find(byte[] tagBytes) {
-        return tags.get(ByteArrayWrapper.wrapperAround(tagBytes));
+        return find(TLVUtil.getTagId(tagBytes, 0, tagBytes.length));
     }
 
-    private static void addTag(Tag tag) {
-        // use 'wrapper around', since the underlying byte-array will not be changed in this case
-        ByteArrayWrapper baw = ByteArrayWrapper.wrapperAround(tag.getTagBytes());
-        if (tags.containsKey(baw)) {
-            throw new IllegalArgumentException("Tag already added " + tag);
+    /**
+     * Returns null if Tag not found
+     *
+     * @param tagId tag id bytes packed big-endian into an int, eg. 0x9F38
+     */
+    public static Tag find(int tagId) {
+        return tags.find(tagId);
+    }
+
+    private static int getTagId(Tag tag) {
+        byte[] tagBytes = tag.getTagBytes();
+        int tagId = TLVUtil.getTagId(tagBytes, 0, tagBytes.length);
+        if (tagId == TLVUtil.INVALID_TAG_ID) {
+            throw new IllegalArgumentException("Tag id longer than 4 bytes " + tag);
         }
-        tags.put(baw, tag);
+        return tagId;
     }
 
     static {
-        Field[] fields; 
-        
-        fields = EMVTags.class.getFields();
-        for (Field f : fields) {
-            if (f.getType() == Tag.class) {
-                try {
-                    Tag t = (Tag) f.get(null);
-                    addTag(t);
-                } catch (IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
-        }
-        fields = VISATags.class.getFields();
-        for (Field f : fields) {
-            if (f.getType() == Tag.class) {
-                try {
-                    Tag t = (Tag) f.get(null);
-                    addPaymentSystemTag(new byte[]{(byte)0xA0, 0x00, 0x00, 0x00, 0x03}, t);
-                } catch (IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
-        }
-        fields = MCTags.class.getFields();
-        for (Field f : fields) {
-            if (f.getType() == Tag.class) {
-                try {
-                    Tag t = (Tag) f.get(null);
-                    addPaymentSystemTag(new byte[]{(byte)0xA0, 0x00, 0x00, 0x00, 0x04}, t);
-                } catch (IllegalAccessException ex) {
-                    throw new RuntimeException(ex);
-                }
-            }
-        }
+        // EMVTagIndex is generated at build time from the tag constants in
+        // EMVTags, VISATags and MCTags (see core/emvtags.gradle)
+        tags = new TagTable(EMVTagIndex.EMV_IDS, EMVTagIndex.EMV_TAGS);
+        addPaymentSystem(new byte[]{(byte)0xA0, 0x00, 0x00, 0x00, 0x03},
+                new TagTable(EMVTagIndex.VISA_IDS, EMVTagIndex.VISA_TAGS));
+        addPaymentSystem(new byte[]{(byte)0xA0, 0x00, 0x00, 0x00, 0x04},
+                new TagTable(EMVTagIndex.MC_IDS, EMVTagIndex.MC_TAGS));
         //Chipnip
-        addPaymentSystemTag(Util.fromHexString("A000000315"), new TagImpl("c1",   TagValueType.BINARY, "?", "Example: BER-TLV[c1, 02 (raw 02), 1101]"));
+        addPaymentSystem(Util.fromHexString("A000000315"), TagTable.of(new TagImpl("c1",   TagValueType.BINARY, "?", "Example: BER-TLV[c1, 02 (raw 02), 1101]")));
     }
-        
+
     @SuppressWarnings("unused")
     private static void addIssuerTag(IssuerIdNumber iin, Tag tag) {
-        //Use 'wrapper around', since the underlying byte-array will not be changed in this case
-        ByteArrayWrapper tagBytesWrapped = ByteArrayWrapper.wrapperAround(tag.getTagBytes());
-        LinkedHashMap<ByteArrayWrapper, Tag> issuerTags = issuerToTagsMap.get(iin);
+        int tagId = getTagId(tag);
+        int iinKey = getIinKey(iin);
+        IntHashMap<Tag> issuerTags = issuerToTagsMap.get(iinKey);
         if (issuerTags == null) {
-            issuerTags = new LinkedHashMap<ByteArrayWrapper, Tag>();
-            issuerToTagsMap.put(iin, issuerTags);
+            issuerTags = new IntHashMap<Tag>();
+            issuerToTagsMap.put(iinKey, issuerTags);
         }
-        if (issuerTags.containsKey(tagBytesWrapped)) {
+        if (issuerTags.containsKey(tagId)) {
             throw new IllegalArgumentException("Tag already added " + tag);
         }
-        issuerTags.put(tagBytesWrapped, tag);
+        issuerTags.put(tagId, tag);
     }
-    
-    private static void addPaymentSystemTag(byte[] ridBytes, Tag tag) {
-        //Use 'wrapper around', since the underlying byte-array will not be changed in this case
-        ByteArrayWrapper tagBytesWrapped = ByteArrayWrapper.wrapperAround(tag.getTagBytes());
-        ByteArrayWrapper ridBytesWrapped = ByteArrayWrapper.wrapperAround(ridBytes);
-        LinkedHashMap<ByteArrayWrapper, Tag> paymentSystemTags = paymentSystemToTagsMap.get(ridBytesWrapped);
-        if (paymentSystemTags == null) {
-            paymentSystemTags = new LinkedHashMap<ByteArrayWrapper, Tag>();
-            paymentSystemToTagsMap.put(ridBytesWrapped, paymentSystemTags);
+
+    private static void addPaymentSystem(byte[] ridBytes, TagTable paymentSystemTags) {
+        long rid = getRid(ridBytes);
+        if (findPaymentSystem(rid) != null) {
+            throw new IllegalArgumentException("Payment system already added " +
+                    Util.byteArrayToHexString(ridBytes));
         }
-        if (paymentSystemTags.containsKey(tagBytesWrapped)) {
-            throw new IllegalArgumentException("Tag already added " + tag);
+        paymentSystemToTagsMap = Arrays.copyOf(paymentSystemToTagsMap,
+                paymentSystemToTagsMap.length + 1);
+        paymentSystemToTagsMap[paymentSystemToTagsMap.length - 1] =
+                new PaymentSystemTags(rid, paymentSystemTags);
+    }
+
+    // iin is 3 bytes
+    private static int getIinKey(IssuerIdNumber iin) {
+        byte[] iinBytes = iin.getBytes();
+        return TLVUtil.getTagId(iinBytes, 0, iinBytes.length);
+    }
+
+    // rid is the first 5 bytes of the aid, zero padded if the aid is shorter
+    private static long getRid(byte[] aidBytes) {
+        long rid = 0;
+        for (int i = 0; i < 5; i++) {
+            rid = (rid << 8) | (i < aidBytes.length ? aidBytes[i] & 0xFF : 0);
         }
-        paymentSystemTags.put(tagBytesWrapped, tag);
+        return rid;
     }
 
-    public static Tag get(EMVApp app, Tag tag){
-        ByteArrayWrapper tagBytesWrapped = ByteArrayWrapper.wrapperAround(tag.getTagBytes());
-        IssuerIdNumber iin = app.getIssuerIdNumber();
-        if(iin != null){
-            if(issuerToTagsMap.containsKey(iin) && issuerToTagsMap.get(iin).containsKey(tagBytesWrapped)){
-                return issuerToTagsMap.get(iin).get(tagBytesWrapped);
+    private static PaymentSystemTags findPaymentSystem(long rid) {
+        // only a handful of payment systems, so a linear search is fastest
+        for (PaymentSystemTags paymentSystemTags : paymentSystemToTagsMap) {
+            if (paymentSystemTags.rid == rid) {
+                return paymentSystemTags;
             }
         }
-        if (app.getAid() != null) {
-            byte[] ridBytes = Arrays.copyOf(app.getAidBytes(), 5);
-            ByteArrayWrapper ridBytesWrapped = ByteArrayWrapper.wrapperAround(ridBytes);
-            if (paymentSystemToTagsMap.containsKey(ridBytesWrapped) &&
-                paymentSystemToTagsMap.get(ridBytesWrapped).containsKey(tagBytesWrapped)) {
-                return paymentSystemToTagsMap.get(ridBytesWrapped).get(tagBytesWrapped);
+        return null;
+    }
+
+    public static Tag get(EMVApp app, Tag tag){
+        return app.getTagResolver().find(tag.getTagBytes());
+    }
+
+    /**
+     * Returns the tags of an application with no payment system or issuer
+     * specific tags
+     */
+    public static TagProvider getResolver() {
+        return tags;
+    }
+
+    /**
+     * Returns the tags as seen by an application: issuer tags take precedence
+     * over payment system tags, which take precedence over EMV tags.
+     * Resolvers are built once per (RID, IIN) and cached.
+     *
+     * @param aidBytes aid of the application, or null
+     * @param iin issuer identification number of the application, or null
+     */
+    public static TagProvider getResolver(byte[] aidBytes, IssuerIdNumber iin) {
+        long rid = 0;
+        PaymentSystemTags paymentSystemTags = null;
+        if (aidBytes != null) {
+            rid = getRid(aidBytes);
+            paymentSystemTags = findPaymentSystem(rid);
+        }
+        int iinKey = 0;
+        IntHashMap<Tag> issuerTags = null;
+        if (iin != null) {
+            iinKey = getIinKey(iin);
+            issuerTags = issuerToTagsMap.get(iinKey);
+        }
+        if (paymentSystemTags == null && issuerTags == null) {
+            return tags;
+        }
+
+        // rid is 5 bytes and iin 3 bytes, so together they fit in a long
+        long key = ((paymentSystemTags == null) ? 0 : rid << 24) |
+                ((issuerTags == null) ? 0 : iinKey & 0xFFFFFFL);
+        return getResolver(key, paymentSystemTags, issuerTags);
+    }
+
+    /**
+     * Returns the resolver identified by key, as returned by getResolverKey();
+     * lets saved responses be formatted again with the tags they were read with
+     */
+    public static TagProvider getResolver(long key) {
+        PaymentSystemTags paymentSystemTags = null;
+        if ((key >>> 24) != 0) {
+            paymentSystemTags = findPaymentSystem(key >>> 24);
+        }
+        IntHashMap<Tag> issuerTags = null;
+        if ((key & 0xFFFFFFL) != 0) {
+            issuerTags = issuerToTagsMap.get((int) (key & 0xFFFFFFL));
+        }
+        if (paymentSystemTags == null && issuerTags == null) {
+            return tags;
+        }
+        return getResolver(key, paymentSystemTags, issuerTags);
+    }
+
+    /**
+     * Returns a key for provider that can be stored (eg. in a saved session)
+     * and passed to getResolver(long) later; 0 for the plain EMV tags
+     */
+    public static long getResolverKey(TagProvider provider) {
+        if (provider instanceof TagResolver) {
+            return ((TagResolver) provider).getKey();
+        }
+        return 0;
+    }
+
+    private static TagProvider getResolver(long key, PaymentSystemTags paymentSystemTags,
+            IntHashMap<Tag> issuerTags) {
+        TagResolver resolver = resolvers.get(key);
+        if (resolver == null) {
+            resolver = new TagResolver(key, tags,
+                    (paymentSystemTags == null) ? null : paymentSystemTags.tags, issuerTags);
+            TagResolver existing = resolvers.putIfAbsent(key, resolver);
+            if (existing != null) {
+                resolver = existing;
             }
         }
-        return find(tag.getTagBytes());
+        return resolver;
     }
 
     public static Iterator<Tag> iterator() {
-        return tags.values().iterator();
+        return tags.iterator();
     }
 
     private EMVTags() {
@@ -0,0 +1,597 @@
+/*
+ * Copyright 2014 Ryan Jones
+ * Copyright 2010 sasc
+ * 
+ * This file was modified from the original source:
+ * https://code.google.com/p/javaemvreader/
+ * 
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.emv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+//import javax.security.auth.callback.Callback;
+//import javax.security.auth.callback.CallbackHandler;
+//import javax.security.auth.callback.PasswordCallback;
+//import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.Tag;
+import org.docrj.smartcard.util.ISO3166_1;
+import org.docrj.smartcard.util.ISO4217_Numeric;
+import org.docrj.smartcard.util.Log;
+import org.docrj.smartcard.util.ResourceLoader;
+import org.docrj.smartcard.util.Util;
+
+/**
+ * Point of sale (POS) terminal
+ *
+ * The terminal's own data, used to answer the card's DOLs, comes from a
+ * TerminalProfile: the "default" profile built from the terminal properties,
+ * or one of the named profiles declared there (see loadProperties), which
+ * can be switched at runtime with setProfile. Values set with setProperty
+ * take precedence over those of any profile.
+ */
+public class EMVTerminal {
+    private final static String TAG = "smartcard-reader";
+
+    public final static String DEFAULT_PROFILE = "default";
+    private final static String RUNTIME_PROFILE = "runtime";
+
+    private final static TerminalVerifResults terminalVerifResults = new TerminalVerifResults();
+    private final static SecureRandom random = new SecureRandom();
+
+    private final static int COUNTRY_CODE_ID = 0x9f1a;
+    private final static int CURRENCY_CODE_ID = 0x5f2a;
+    private final static byte[] DEFAULT_NUMERIC_CODE = {0x08, 0x26};
+
+    // profiles by name, the default first; guarded by EMVTerminal.class
+    private final static Map<String, TerminalProfile> profiles = new LinkedHashMap<>();
+
+    private static volatile TerminalProfile profile;
+    private static volatile TerminalProfile runtimeProfile;
+
+    // private static CallbackHandler pinCallbackHandler;
+    // private static boolean doVerifyPinIfRequired = false;
+    // private static boolean isOnline = true;
+
+    /**
+     * Compiles the terminal properties into profiles
+     *
+     * Keys are tag ids in hex, eg. "9f1a", for the default profile, or
+     * "name.9f1a" for the profile "name", which starts from the default one.
+     * The profile in use is kept if it is still there, else it reverts to
+     * the default.
+     */
+    public static void loadProperties(ResourceLoader loader) {
+        Properties properties = new Properties();
+        try {
+            InputStream defaultStream = loader.open(ResourceLoader.TERMINAL_PROPERTIES);
+            try {
+                properties.load(defaultStream);
+            } finally {
+                defaultStream.close();
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        }
+
+        TerminalProfile.Builder defaults = newBuiltInBuilder(DEFAULT_PROFILE);
+        for (String key : properties.stringPropertyNames()) {
+            if (key.indexOf('.') < 0) {
+                addProperty(defaults, key, properties.getProperty(key));
+            }
+        }
+        TerminalProfile defaultProfile = defaults.build();
+
+        Map<String, TerminalProfile.Builder> builders = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot < 0) {
+                continue;
+            }
+            String name = key.substring(0, dot);
+            TerminalProfile.Builder builder = builders.get(name);
+            if (builder == null) {
+                builder = new TerminalProfile.Builder(name, defaultProfile);
+                builders.put(name, builder);
+            }
+            addProperty(builder, key.substring(dot + 1), properties.getProperty(key));
+        }
+
+        synchronized (EMVTerminal.class) {
+            String active = profile.getName();
+            profiles.clear();
+            profiles.put(DEFAULT_PROFILE, defaultProfile);
+            for (TerminalProfile.Builder builder : builders.values()) {
+                TerminalProfile named = builder.build();
+                profiles.put(named.getName(), named);
+            }
+            TerminalProfile activeProfile = profiles.get(active);
+            profile = (activeProfile != null) ? activeProfile : defaultProfile;
+        }
+    }
+
+    private static void addProperty(TerminalProfile.Builder builder, String key, String value) {
+        byte[] tagBytes = Util.fromHexString(key.trim());
+        int tagId = TLVUtil.getTagId(tagBytes, 0, tagBytes.length);
+        if (tagBytes.length == 0 || tagId == TLVUtil.INVALID_TAG_ID) {
+            Log.w(TAG, "Ignoring terminal property with invalid tag id: " + key);
+            return;
+        }
+        byte[] valueBytes = Util.fromHexString(value.trim());
+        if ((tagId == COUNTRY_CODE_ID || tagId == CURRENCY_CODE_ID) && valueBytes.length == 2) {
+            // only used when the app has no code of its own
+            builder.setSupplier(tagId, new NumericCodeSupplier(tagId == CURRENCY_CODE_ID, valueBytes));
+        } else {
+            builder.setValue(tagId, valueBytes);
+        }
+    }
+
+    // data the terminal has without any properties
+    private static TerminalProfile.Builder newBuiltInBuilder(String name) {
+        //This seems only to be used in contactless mode. Construct accordingly
+        TerminalTranQualifiers ttq = new TerminalTranQualifiers();
+        ttq.setContactlessEMVmodeSupported(true);
+        ttq.setReaderIsOfflineOnly(true);
+
+        //transactionTypes = {     0:  "Payment",     1:  "Withdrawal", }
+        //http://www.codeproject.com/Articles/100084/Introduction-to-ISO-8583
+        return new TerminalProfile.Builder(name)
+                .setSupplier(COUNTRY_CODE_ID, new NumericCodeSupplier(false, DEFAULT_NUMERIC_CODE))
+                .setSupplier(CURRENCY_CODE_ID, new NumericCodeSupplier(true, DEFAULT_NUMERIC_CODE))
+                .setSupplier(EMVTags.UNPREDICTABLE_NUMBER, UNPREDICTABLE_NUMBER)
+                .setValue(EMVTags.TERMINAL_TRANSACTION_QUALIFIERS, ttq.getBytes())
+                .setSupplier(EMVTags.TERMINAL_VERIFICATION_RESULTS, TERMINAL_VERIFICATION_RESULTS)
+                .setSupplier(EMVTags.TRANSACTION_DATE, TRANSACTION_DATE)
+                .setValue(EMVTags.TRANSACTION_TYPE, new byte[]{0x00});
+    }
+
+    /**
+     * Names of the profiles, the default first
+     */
+    public static synchronized List<String> getProfileNames() {
+        return new ArrayList<>(profiles.keySet());
+    }
+
+    /**
+     * Returns the profile in use
+     */
+    public static TerminalProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns null if there is no such profile
+     */
+    public static synchronized TerminalProfile getProfile(String name) {
+        return profiles.get(name);
+    }
+
+    /**
+     * Switches to the named profile
+     *
+     * @return false if there is no such profile, in which case the profile
+     *         in use is kept
+     */
+    public static synchronized boolean setProfile(String name) {
+        TerminalProfile named = profiles.get(name);
+        if (named == null) {
+            return false;
+        }
+        profile = named;
+        return true;
+    }
+
+    /**
+     * Adds a profile, replacing (and if in use, switching to) any profile
+     * of the same name; see newProfileBuilder
+     */
+    public static synchronized void addProfile(TerminalProfile newProfile) {
+        profiles.put(newProfile.getName(), newProfile);
+        if (profile.getName().equals(newProfile.getName())) {
+            profile = newProfile;
+        }
+    }
+
+    /**
+     * Returns a builder for a profile that starts from the default one
+     */
+    public static synchronized TerminalProfile.Builder newProfileBuilder(String name) {
+        return new TerminalProfile.Builder(name, profiles.get(DEFAULT_PROFILE));
+    }
+
+    //PDOL (Processing options Data Object List)
+    //DDOL (*Default* Dynamic Data Authentication Data Object List)
+    //     (Default to be used for constructing the INTERNAL AUTHENTICATE command if the DDOL in the card is not present)
+    //TDOL (*Default* Transaction Certificate Data Object List)
+    //     (Default to be used for generating the TC Hash Value if the TDOL in the card is not present)
+    
+    //PDOL example (Visa Electron, contactless)
+//    9f 38 18 -- Processing Options Data Object List (PDOL)
+//         9f 66 04 -- Terminal Transaction Qualifiers
+//         9f 02 06 -- Amount, Authorised (Numeric)
+//         9f 03 06 -- Amount, Other (Numeric)
+//         9f 1a 02 -- Terminal Country Code
+//         95 05 -- Terminal Verification Results (TVR)
+//         5f 2a 02 -- Transaction Currency Code
+//         9a 03 -- Transaction Date
+//         9c 01 -- Transaction Type
+//         9f 37 04 -- Unpredictable Number
+
+    private final static TerminalProfile.ValueSupplier UNPREDICTABLE_NUMBER =
+            new TerminalProfile.ValueSupplier() {
+        @Override
+        public boolean supply(EMVApp app, byte[] out, int offset, int length) {
+            // TODO: get bytes from a hardware RNG, or set seed
+            int rnd = 0;
+            for (int i = 0; i < length; i++) {
+                if ((i & 3) == 0) {
+                    rnd = random.nextInt();
+                }
+                out[offset + i] = (byte) rnd;
+                rnd >>>= 8;
+            }
+            return true;
+        }
+    };
+
+    private final static TerminalProfile.ValueSupplier TERMINAL_VERIFICATION_RESULTS =
+            new TerminalProfile.ValueSupplier() {
+        @Override
+        public boolean supply(EMVApp app, byte[] out, int offset, int length) {
+            if (length != 5) {
+                return false;
+            }
+            //All bits set to '0'
+            System.arraycopy(terminalVerifResults.toByteArray(), 0, out, offset, length);
+            return true;
+        }
+    };
+
+    private final static TerminalProfile.ValueSupplier TRANSACTION_DATE =
+            new TerminalProfile.ValueSupplier() {
+        @Override
+        public boolean supply(EMVApp app, byte[] out, int offset, int length) {
+            if (length != 3) {
+                return false;
+            }
+            // YYMMDD
+            Calendar now = Calendar.getInstance();
+            out[offset] = toBcd(now.get(Calendar.YEAR) % 100);
+            out[offset + 1] = toBcd(now.get(Calendar.MONTH) + 1);
+            out[offset + 2] = toBcd(now.get(Calendar.DAY_OF_MONTH));
+            return true;
+        }
+    };
+
+    // country or currency code: the app's own if it has one, else the profile's
+    private static final class NumericCodeSupplier implements TerminalProfile.ValueSupplier {
+        private final boolean currency;
+        private final byte[] defaultCode;
+
+        NumericCodeSupplier(boolean currency, byte[] defaultCode) {
+            this.currency = currency;
+            this.defaultCode = defaultCode.clone();
+        }
+
+        @Override
+        public boolean supply(EMVApp app, byte[] out, int offset, int length) {
+            if (length != 2) {
+                return false;
+            }
+            int code = currency ? findCurrencyCode(app) : findCountryCode(app);
+            if (code != -1) {
+                // n 3 code as 2 bytes of BCD, eg. 826 -> 08 26
+                out[offset] = toBcd((code / 100) % 100);
+                out[offset + 1] = toBcd(code % 100);
+            } else {
+                out[offset] = defaultCode[0];
+                out[offset + 1] = defaultCode[1];
+            }
+            return true;
+        }
+    }
+
+    static {
+        // after the suppliers, which the built-in data refers to
+        profile = newBuiltInBuilder(DEFAULT_PROFILE).build();
+        runtimeProfile = new TerminalProfile.Builder(RUNTIME_PROFILE).build();
+        profiles.put(DEFAULT_PROFILE, profile);
+    }
+
+    private static byte toBcd(int twoDigits) {
+        return (byte) ((twoDigits / 10) << 4 | twoDigits % 10);
+    }
+
+    public static TerminalVerifResults getTerminalVerifResults() {
+        return terminalVerifResults;
+    }
+    
+    public static void resetTVR(){
+        terminalVerifResults.reset();
+    }
+    
+    /**
+     * Sets a value that takes precedence over those of all profiles
+     */
+    public static void setProperty(String tagHex, String valueHex) {
+        byte[] tagBytes = Util.fromHexString(tagHex);
+        int tagId = TLVUtil.getTagId(tagBytes, 0, tagBytes.length);
+        if (tagBytes.length == 0 || tagId == TLVUtil.INVALID_TAG_ID) {
+            throw new IllegalArgumentException("Invalid tag id: " + tagHex);
+        }
+        synchronized (EMVTerminal.class) {
+            runtimeProfile = new TerminalProfile.Builder(RUNTIME_PROFILE, runtimeProfile)
+                    .setValue(tagId, Util.fromHexString(valueHex)).build();
+        }
+    }
+    
+    public static void setProperty(Tag tag, byte[] value){
+        synchronized (EMVTerminal.class) {
+            runtimeProfile = new TerminalProfile.Builder(RUNTIME_PROFILE, runtimeProfile)
+                    .setValue(tag, value).build();
+        }
+    }
+    
+    public static boolean isCDASupported(EMVApp app) {
+        return false;
+    }
+    
+    public static boolean isDDASupported(EMVApp app) {
+        return true;
+    }
+    
+    public static boolean isSDASupported(EMVApp app) {
+        return true;
+    }
+    
+    public static boolean isATM() {
+        return false;
+    }
+    
+    public static Date getCurrentDate() {
+        return new Date();
+    }
+    
+    /*
+    public static int getSupportedApplicationVersionNumber(EMVApp app) {
+        //TODO
+        //For now, just return the version number maintained in the card
+        //return app.getApplicationVersionNumber();
+        return 1;
+    }
+
+    public static boolean isCVMRecognized(EMVApp app, CVRule rule) {
+        switch(rule.getRule()) {
+            case RESERVED_FOR_USE_BY_THE_INDIVIDUAL_PAYMENT_SYSTEMS:
+                //app.getAID().getRIDBytes();
+                //TODO check if RID specific rule is supported
+                //if(supported) {
+                //    return true;
+                //}
+            case RESERVED_FOR_USE_BY_THE_ISSUER:
+                
+                if(app.getIssuerIdentificationNumber() != null){
+                    //TODO check if issuer specific rule is supported
+                    //if(supported){
+                    //  return true;
+                    //}
+                }
+            case NOT_AVAILABLE_FOR_USE:
+            case RFU:
+                return false;
+        }
+        return true;
+    }
+    
+    public static boolean isCVMSupported(CVRule rule) {
+        switch(rule.getRule()) {
+            //TODO support enciphered PIN
+            case ENCIPHERED_PIN_VERIFIED_BY_ICC:
+            case ENCIPHERED_PIN_VERIFIED_BY_ICC_AND_SIGNATURE_ON_PAPER:
+                return false;
+            case PLAINTEXT_PIN_VERIFIED_BY_ICC_AND_SIGNATURE_ON_PAPER:
+            case PLAINTEXT_PIN_VERIFIED_BY_ICC:
+                return hasPinInputCapability();
+            case SIGNATURE_ON_PAPER:
+                return false;
+            case ENCIPHERED_PIN_VERIFIED_ONLINE:
+                return isOnline();
+            case FAIL_PROCESSING:
+            case NO_CVM_REQUIRED:
+                return true;
+        }
+        return false;
+    }
+    
+    public static boolean isOnline() {
+        return isOnline;
+    }
+    
+    public static void setIsOnline(boolean value){
+        isOnline = value;
+    }
+    
+    public static boolean isCVMConditionSatisfied(CVRule rule) {
+        if(rule.getConditionAlways()) {
+            return true;
+        }
+        if(rule.getConditionCode() <= 0x05){
+            //TODO
+            return true;
+        }else if(rule.getConditionCode() < 0x0A) {
+            //TODO
+            //Check for presence Application Currency Code or Amount, Authorised in app records?
+            return true;
+        } else { //RFU and proprietary
+            return false;
+        }
+    }
+    
+    public static boolean verifyEncipheredPinOnline() {
+        if(!isOnline()) {
+            return false;
+        }
+        //TODO
+        return true;
+    }
+    
+    public static boolean hasSignatureOnPaper() {
+        return true;
+    }
+    
+    public static void setDoVerifyPinIfRequired(boolean value) {
+        doVerifyPinIfRequired = value;
+    }
+    
+    public static boolean getDoVerifyPinIfRequired() {
+        return doVerifyPinIfRequired;
+    }
+    */
+
+    /**
+     * 
+     * @return true if a Pin CallbackHandler has be set
+     */
+    /*
+    public static boolean hasPinInputCapability() {
+        return doVerifyPinIfRequired && pinCallbackHandler != null;
+    }
+    
+    public static void setPinCallbackHandler(CallbackHandler callbackHandler) {
+        pinCallbackHandler = callbackHandler;
+    }
+    
+    public static PasswordCallback getPinInput() {
+        CallbackHandler callBackHandler = pinCallbackHandler;
+        if(callBackHandler == null){
+            return null;
+        }
+        PasswordCallback passwordCallback = new PasswordCallback("Type PIN", false);
+        try{
+            callBackHandler.handle(new Callback[]{passwordCallback});
+        }catch(IOException ex){
+            Log.info(Util.getStackTrace(ex));
+        }catch(UnsupportedCallbackException ex){
+            Log.info(Util.getStackTrace(ex));
+        }
+        return passwordCallback;
+    }
+    
+    public static boolean getPerformTerminalRiskManagement() {
+        return false;
+    }
+    */
+
+    public static byte[] constructDOLResponse(DOL dol, EMVApp app) {
+        byte[] response = new byte[dol.getResponseLength()];
+        constructDOLResponse(dol, app, response, 0);
+        return response;
+    }
+
+    /**
+     * Writes the DOL response (dol.getResponseLength() bytes) at out[offset],
+     * eg. straight into a command being built; out must be zeroed there
+     */
+    public static void constructDOLResponse(DOL dol, EMVApp app, byte[] out, int offset) {
+        TerminalProfile runtime = runtimeProfile;
+        TerminalProfile terminal = profile;
+        for (int i = 0; i < dol.size(); i++) {
+            int tagId = dol.getTagId(i);
+            int length = dol.getLength(i);
+            if (!runtime.write(tagId, app, out, offset, length)
+                    && !terminal.write(tagId, app, out, offset, length)) {
+                // left as zeros
+                Log.d(TAG, "Terminal Resident Data not found for " + dol.getTag(i) + " length: " + length);
+            }
+            offset += length;
+        }
+    }
+
+    //The ICC may contain the DDOL, but there shall be a default DDOL in the terminal, 
+    //specified by the payment system, for use in case the DDOL is not present in the ICC.
+    public static byte[] getDefaultDDOLResponse(EMVApp app) {
+        //It is mandatory that the DDOL contains the Unpredictable Number generated by the terminal (tag '9F37', 4 bytes binary).
+        byte[] unpredictableNumber = Util.generateRandomBytes(4);
+        
+        //TODO add other DDOL data specified by the payment system
+        //if(app.getAID().equals(SOMEAID))
+        
+        return unpredictableNumber;
+    }
+
+    //Ex Banco BRADESCO (f0 00 00 00 03 00 01) failes GPO with wrong COUNTRY_CODE !
+    // returns -1 if the app has no country code, to use the profile's
+    private static int findCountryCode(EMVApp app) {
+        if(app != null){
+            int issuerCC = app.getIssuerCC();
+            if (issuerCC == -1 && app.getIssuerCCAlpha3() != null) {
+                issuerCC = ISO3166_1.getCodeForAlpha3(app.getIssuerCCAlpha3());
+            }
+            if(issuerCC != -1){
+                return issuerCC;
+            }
+        }
+
+        Log.d(TAG, "No Issuer Country Code found in app. Using default Terminal Country Code");
+        return -1;
+    }
+    
+    // returns -1 if the app has no currency code, to use the profile's
+    private static int findCurrencyCode(EMVApp app){
+        if(app != null){
+            int appCurrencyCode = app.getAppCurrencyCode();
+            if (appCurrencyCode != -1) {
+                return appCurrencyCode;
+            }
+            Locale preferredLocale = null;
+            if (app.getLanguagePref() != null) {
+                preferredLocale = app.getLanguagePref().getPreferredLocale();
+            }
+            /* TODO:
+            if (preferredLocale == null 
+                    && app.getCard() != null 
+                    && app.getCard().getPSE() != null
+                    && app.getCard().getPSE().getLanguagePreference() != null){
+                preferredLocale = app.getCard().getPSE().getLanguagePreference().getPreferredLocale();
+            }
+            */
+            if (preferredLocale != null) {
+                if(preferredLocale.getLanguage().equals(Locale.getDefault().getLanguage())) {
+                    //Guesstimate; we presume default locale is the preferred
+                    preferredLocale = Locale.getDefault();
+                }
+                //Just use the first found. It might not be correct, eg Brazil (BRZ) vs Portugal (EUR)
+                return ISO4217_Numeric.findNumericCodeForLocale(preferredLocale);
+            }
+            
+        }
+        return -1;
+    }
+}
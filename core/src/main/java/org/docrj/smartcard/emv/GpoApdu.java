@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.emv;
+
+import java.util.Arrays;
+
+import org.docrj.smartcard.iso7816.ApduBuilder;
+import org.docrj.smartcard.iso7816.CommandApdu;
+import org.docrj.smartcard.util.Util;
+
+public class GpoApdu extends CommandApdu {
+
+    public static final byte EMV_CLA = (byte)0x80;
+    public static final byte EMV_GPO = (byte)0xA8;
+
+    // command data template holding the PDOL response
+    private static final int TAG_COMMAND_TEMPLATE = 0x83;
+
+    // command as written by getGpoApdu, or null once a setter has changed it
+    private byte[] mApdu;
+    private boolean mExtended;
+    private int mDataOffset;
+
+    public GpoApdu() {
+        super(EMV_CLA, EMV_GPO, 0x00, 0x00, Util.hexToBytes("8300"), 0x00); // GW MC
+    }
+
+    public GpoApdu(byte[] data) {
+        super(EMV_CLA, EMV_GPO, 0x00, 0x00, data, 0x00);
+    }
+
+    private GpoApdu(ApduBuilder builder, int dataOffset) {
+        super(EMV_CLA, EMV_GPO, 0x00, 0x00, 0x00);
+        mLc = builder.getLc();
+        mExtended = builder.isExtended();
+        mApdu = builder.finish();
+        mDataOffset = dataOffset;
+    }
+
+    /**
+     * Builds the GPO command for the PDOL (which may be null) in one pass:
+     * the PDOL response is written straight into the command, inside the
+     * 83 template, with Lc and Le extended if the response needs it
+     */
+    public static GpoApdu getGpoApdu(DOL pdol, EMVApp app) {
+        int responseLength = pdol != null ? pdol.getResponseLength() : 0;
+        int lc = 1 + ApduBuilder.getBerLengthSize(responseLength) + responseLength;
+        ApduBuilder builder = new ApduBuilder(EMV_CLA, EMV_GPO, 0x00, 0x00, lc, 0x00,
+                ApduBuilder.needsExtended(lc, 0x00));
+        int dataOffset = builder.getOffset();
+        builder.put(TAG_COMMAND_TEMPLATE).putBerLength(responseLength);
+        if (responseLength > 0) {
+            EMVTerminal.constructDOLResponse(pdol, app, builder.array(),
+                    builder.reserve(responseLength));
+        }
+        return new GpoApdu(builder, dataOffset);
+    }
+
+    @Override
+    public byte[] toBytes(boolean extended) {
+        if (mApdu != null) {
+            if ((extended || needsExtendedLength()) == mExtended) {
+                // a copy, as the caller may change it
+                return mApdu.clone();
+            }
+            unbuild();
+        }
+        return super.toBytes(extended);
+    }
+
+    @Override
+    public byte[] getData() {
+        if (mApdu != null) {
+            return Arrays.copyOfRange(mApdu, mDataOffset, mDataOffset + mLc);
+        }
+        return super.getData();
+    }
+
+    @Override
+    public void setP1(int p1) {
+        unbuild();
+        super.setP1(p1);
+    }
+
+    @Override
+    public void setP2(int p2) {
+        unbuild();
+        super.setP2(p2);
+    }
+
+    @Override
+    public void setData(byte[] data) {
+        mApdu = null;
+        super.setData(data);
+    }
+
+    @Override
+    public void setLe(int le) {
+        unbuild();
+        super.setLe(le);
+    }
+
+    @Override
+    public CommandApdu clone() {
+        CommandApdu apdu = super.clone();
+        if (mApdu != null) {
+            apdu.setData(getData());
+        }
+        return apdu;
+    }
+
+    // falls back to encoding the fields, which then need the data
+    private void unbuild() {
+        if (mApdu != null) {
+            mData = getData();
+            mApdu = null;
+        }
+    }
+
+    @Override
+    public String getCommandName() {
+        return "get processing options";
+    }
+}
@@ -50,4 +50,16 @@ public interface TagProvider {
      * Returns null if Tag not found
      */
     public Tag find(byte[] tagBytes);
+
+    /**
+     * Returns null if Tag not found
+     *
+     * @param tagId tag id bytes packed big-endian into an int (see TLVUtil.getTagId)
+     */
+    public Tag find(int tagId);
+
+    /**
+     * Same as getNotNull(byte[]) for the tag id bytes in buf, without copying them
+     */
+    public Tag getNotNull(byte[] buf, int offset, int length);
 }
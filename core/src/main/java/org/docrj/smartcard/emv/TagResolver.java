@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.emv;
+
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.Tag;
+import org.docrj.smartcard.util.IntHashMap;
+
+/**
+ * Tags as seen by one application: the issuer tags (by IIN), the payment
+ * system tags (by RID) and the EMV tags, merged into a single map keyed by
+ * tag id so that each lookup is one probe instead of three
+ *
+ * Obtained from EMVTags.getResolver(), usually through
+ * EMVApp.getTagResolver(). Immutable, so it can be shared between threads.
+ */
+public final class TagResolver implements TagProvider {
+
+    private final long key;
+    private final IntHashMap<Tag> tags;
+
+    /**
+     * @param key identifies the resolver, see EMVTags.getResolverKey()
+     * @param paymentSystemTags null if the RID has no tags of its own
+     * @param issuerTags null if the IIN has no tags of its own
+     */
+    TagResolver(long key, TagTable globalTags, TagTable paymentSystemTags,
+            IntHashMap<Tag> issuerTags) {
+        this.key = key;
+        int size = globalTags.size();
+        if (paymentSystemTags != null) {
+            size += paymentSystemTags.size();
+        }
+        if (issuerTags != null) {
+            size += issuerTags.size();
+        }
+        tags = new IntHashMap<Tag>(size);
+        put(globalTags);
+        if (paymentSystemTags != null) {
+            put(paymentSystemTags);
+        }
+        if (issuerTags != null) {
+            for (int i = 0; i < issuerTags.size(); i++) {
+                tags.put(issuerTags.keyAt(i), issuerTags.valueAt(i));
+            }
+        }
+    }
+
+    private void put(TagTable layer) {
+        for (int i = 0; i < layer.size(); i++) {
+            tags.put(layer.idAt(i), layer.tagAt(i));
+        }
+    }
+
+    @Override
+    public Tag find(int tagId) {
+        return tags.get(tagId);
+    }
+
+    @Override
+    public Tag find(byte[] tagBytes) {
+        return tags.get(TLVUtil.getTagId(tagBytes, 0, tagBytes.length));
+    }
+
+    @Override
+    public Tag getNotNull(byte[] tagBytes) {
+        return getNotNull(tagBytes, 0, tagBytes.length);
+    }
+
+    @Override
+    public Tag getNotNull(byte[] buf, int offset, int length) {
+        Tag tag = tags.get(TLVUtil.getTagId(buf, offset, length));
+        if (tag == null) {
+            tag = EMVTags.getUnknownTagCache().intern(buf, offset, length);
+        }
+        return tag;
+    }
+
+    long getKey() {
+        return key;
+    }
+
+    public int size() {
+        return tags.size();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.emv;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.Tag;
+
+/**
+ * Immutable set of tags sorted by tag id (see TLVUtil.getTagId) and
+ * searched with a binary search
+ *
+ * The tables for EMVTags, VISATags and MCTags are generated at build time
+ * into EMVTagIndex by the generateEmvTagIndex task (core/emvtags.gradle).
+ */
+public final class TagTable implements TagProvider {
+
+    private final int[] ids;
+    private final Tag[] tags;
+
+    /**
+     * @param ids tag ids in ascending order
+     * @param tags tags in the same order as ids
+     */
+    TagTable(int[] ids, Tag[] tags) {
+        if (ids.length != tags.length) {
+            throw new IllegalArgumentException("ids.length(" + ids.length +
+                    ") != tags.length(" + tags.length + ")");
+        }
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i - 1] >= ids[i]) {
+                throw new IllegalArgumentException("Tag ids not sorted or tag already added " + tags[i]);
+            }
+        }
+        this.ids = ids;
+        this.tags = tags;
+    }
+
+    /**
+     * Builds a table from tags in any order; meant for small tables
+     * defined at runtime
+     */
+    public static TagTable of(Tag... tags) {
+        Tag[] sorted = Arrays.copyOf(tags, tags.length);
+        Arrays.sort(sorted, new Comparator<Tag>() {
+            @Override
+            public int compare(Tag lhs, Tag rhs) {
+                int lhsId = getTagId(lhs);
+                int rhsId = getTagId(rhs);
+                return (lhsId < rhsId) ? -1 : ((lhsId == rhsId) ? 0 : 1);
+            }
+        });
+        int[] ids = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = getTagId(sorted[i]);
+        }
+        return new TagTable(ids, sorted);
+    }
+
+    private static int getTagId(Tag tag) {
+        byte[] tagBytes = tag.getTagBytes();
+        int tagId = TLVUtil.getTagId(tagBytes, 0, tagBytes.length);
+        if (tagId == TLVUtil.INVALID_TAG_ID) {
+            throw new IllegalArgumentException("Tag id longer than 4 bytes " + tag);
+        }
+        return tagId;
+    }
+
+    @Override
+    public Tag find(int tagId) {
+        int index = Arrays.binarySearch(ids, tagId);
+        return (index < 0) ? null : tags[index];
+    }
+
+    @Override
+    public Tag find(byte[] tagBytes) {
+        return find(TLVUtil.getTagId(tagBytes, 0, tagBytes.length));
+    }
+
+    @Override
+    public Tag getNotNull(byte[] tagBytes) {
+        Tag tag = find(tagBytes);
+        if (tag == null) {
+            tag = EMVTags.createUnknownTag(tagBytes);
+        }
+        return tag;
+    }
+
+    @Override
+    public Tag getNotNull(byte[] buf, int offset, int length) {
+        Tag tag = find(TLVUtil.getTagId(buf, offset, length));
+        if (tag == null) {
+            tag = EMVTags.getUnknownTagCache().intern(buf, offset, length);
+        }
+        return tag;
+    }
+
+    public int size() {
+        return tags.length;
+    }
+
+    int idAt(int index) {
+        return ids[index];
+    }
+
+    Tag tagAt(int index) {
+        return tags[index];
+    }
+
+    /**
+     * Iterates in tag id order
+     */
+    public Iterator<Tag> iterator() {
+        return Arrays.asList(tags).iterator();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.docrj.smartcard.emv;
+
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.Tag;
+import org.docrj.smartcard.util.IntHashMap;
+
+/**
+ * Terminal resident data, compiled for building DOL responses
+ *
+ * Values are keyed by tag id (see TLVUtil.getTagId) and are either bytes,
+ * decoded once when the profile is built, or a ValueSupplier for values that
+ * depend on the card or the moment (eg. the unpredictable number). A value's
+ * bytes are used when the DOL asks for exactly that many, otherwise the
+ * tag's supplier (if any) is asked.
+ *
+ * Profiles are named and immutable, so they can be shared between threads;
+ * EMVTerminal holds the set of profiles and the one in use.
+ */
+public final class TerminalProfile {
+
+    /**
+     * Supplies a value that is not known when the profile is built
+     */
+    public interface ValueSupplier {
+        /**
+         * Writes a value of the given length at out[offset]
+         *
+         * @param app the application the DOL came from, may be null
+         * @return false if there is no value of that length, in which case
+         *         out is left as is (zeros)
+         */
+        boolean supply(EMVApp app, byte[] out, int offset, int length);
+    }
+
+    private final String name;
+    private final IntHashMap<byte[]> values;
+    private final IntHashMap<ValueSupplier> suppliers;
+
+    private TerminalProfile(Builder builder) {
+        name = builder.name;
+        values = copy(builder.values);
+        suppliers = copy(builder.suppliers);
+    }
+
+    private static <V> IntHashMap<V> copy(IntHashMap<V> map) {
+        IntHashMap<V> copy = new IntHashMap<V>(map.size());
+        for (int i = 0; i < map.size(); i++) {
+            copy.put(map.keyAt(i), map.valueAt(i));
+        }
+        return copy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the bytes of the tag's value, or null; callers must not
+     * modify them
+     */
+    public byte[] getValue(int tagId) {
+        return values.get(tagId);
+    }
+
+    public ValueSupplier getSupplier(int tagId) {
+        return suppliers.get(tagId);
+    }
+
+    /**
+     * Writes the tag's value at out[offset]
+     *
+     * @return false if the profile has no value of that length
+     */
+    public boolean write(int tagId, EMVApp app, byte[] out, int offset, int length) {
+        byte[] value = values.get(tagId);
+        if (value != null && value.length == length) {
+            System.arraycopy(value, 0, out, offset, length);
+            return true;
+        }
+        ValueSupplier supplier = suppliers.get(tagId);
+        return supplier != null && supplier.supply(app, out, offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return "TerminalProfile[" + name + "]";
+    }
+
+    public static final class Builder {
+
+        private final String name;
+        private final IntHashMap<byte[]> values;
+        private final IntHashMap<ValueSupplier> suppliers;
+
+        public Builder(String name) {
+            if (name == null) {
+                throw new IllegalArgumentException("Param name cannot be null");
+            }
+            this.name = name;
+            values = new IntHashMap<byte[]>();
+            suppliers = new IntHashMap<ValueSupplier>();
+        }
+
+        /**
+         * Starts from the values and suppliers of base
+         */
+        public Builder(String name, TerminalProfile base) {
+            this(name);
+            for (int i = 0; i < base.values.size(); i++) {
+                values.put(base.values.keyAt(i), base.values.valueAt(i));
+            }
+            for (int i = 0; i < base.suppliers.size(); i++) {
+                suppliers.put(base.suppliers.keyAt(i), base.suppliers.valueAt(i));
+            }
+        }
+
+        public Builder setValue(Tag tag, byte[] value) {
+            return setValue(getTagId(tag), value);
+        }
+
+        /**
+         * The value is copied
+         */
+        public Builder setValue(int tagId, byte[] value) {
+            values.put(tagId, value.clone());
+            return this;
+        }
+
+        public Builder setSupplier(Tag tag, ValueSupplier supplier) {
+            return setSupplier(getTagId(tag), supplier);
+        }
+
+        public Builder setSupplier(int tagId, ValueSupplier supplier) {
+            suppliers.put(tagId, supplier);
+            return this;
+        }
+
+        public TerminalProfile build() {
+            return new TerminalProfile(this);
+        }
+
+        private static int getTagId(Tag tag) {
+            byte[] tagBytes = tag.getTagBytes();
+            int tagId = TLVUtil.getTagId(tagBytes, 0, tagBytes.length);
+            if (tagId == TLVUtil.INVALID_TAG_ID) {
+                throw new IllegalArgumentException("Tag id longer than 4 bytes: " + tag);
+            }
+            return tagId;
+        }
+    }
+}
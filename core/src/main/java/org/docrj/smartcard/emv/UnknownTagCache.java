@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.emv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.Tag;
+import org.docrj.smartcard.iso7816.TagImpl;
+import org.docrj.smartcard.iso7816.TagValueType;
+
+/**
+ * Bounded, lock-free intern cache of "[UNKNOWN TAG]" instances, keyed by
+ * tag id (see TLVUtil.getTagId)
+ *
+ * Each tag id hashes to a short run of slots; when they are all taken,
+ * a miss evicts the tag in the first of them. Hit counts per tag show which
+ * proprietary tags turn up often enough to be added to MCTags/VISATags.
+ */
+public final class UnknownTagCache {
+
+    public static final String UNKNOWN_TAG_NAME = "[UNKNOWN TAG]";
+
+    public static final class Entry {
+        private final int tagId;
+        private final Tag tag;
+        private final AtomicLong hits = new AtomicLong();
+
+        Entry(int tagId, Tag tag) {
+            this.tagId = tagId;
+            this.tag = tag;
+        }
+
+        public Tag getTag() {
+            return tag;
+        }
+
+        /**
+         * Number of times this instance was reused since it was cached
+         */
+        public long getHitCount() {
+            return hits.get();
+        }
+    }
+
+    // slots searched per tag id
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param size maximum number of cached tags, rounded up to a power of 2
+     */
+    public UnknownTagCache(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Param size must be > 0, but was " + size);
+        }
+        int numSlots = Integer.highestOneBit(size);
+        if (numSlots < size) {
+            numSlots <<= 1;
+        }
+        slots = new AtomicReferenceArray<Entry>(numSlots);
+        mask = numSlots - 1;
+    }
+
+    public Tag intern(byte[] tagBytes) {
+        return intern(tagBytes, 0, tagBytes.length);
+    }
+
+    /**
+     * Returns the cached unknown tag for the tag id bytes in buf, creating
+     * and caching it if needed
+     */
+    public Tag intern(byte[] buf, int offset, int length) {
+        int tagId = TLVUtil.getTagId(buf, offset, length);
+        if (tagId == TLVUtil.INVALID_TAG_ID) {
+            // too long to key on, don't cache
+            misses.incrementAndGet();
+            return create(buf, offset, length);
+        }
+
+        int first = hash(tagId) & mask;
+        Entry created = null;
+        while (true) {
+            int free = -1;
+            for (int i = 0; i < PROBES; i++) {
+                int slot = (first + i) & mask;
+                Entry entry = slots.get(slot);
+                if (entry == null) {
+                    if (free < 0) {
+                        free = slot;
+                    }
+                } else if (entry.tagId == tagId) {
+                    entry.hits.incrementAndGet();
+                    hits.incrementAndGet();
+                    return entry.tag;
+                }
+            }
+            if (created == null) {
+                created = new Entry(tagId, create(buf, offset, length));
+            }
+            if (free >= 0) {
+                if (slots.compareAndSet(free, null, created)) {
+                    break;
+                }
+                // another thread took the slot; it may have added this tag, so look again
+            } else {
+                // all probed slots are taken, evict the first one
+                slots.set(first, created);
+                break;
+            }
+        }
+        misses.incrementAndGet();
+        return created.tag;
+    }
+
+    private static Tag create(byte[] buf, int offset, int length) {
+        return new TagImpl(Arrays.copyOfRange(buf, offset, offset + length),
+                TagValueType.BINARY, UNKNOWN_TAG_NAME, "");
+    }
+
+    private static int hash(int tagId) {
+        int h = tagId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the currently cached tags, most frequently reused first
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < slots.length(); i++) {
+            Entry entry = slots.get(i);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                long lhsHits = lhs.getHitCount();
+                long rhsHits = rhs.getHitCount();
+                return (lhsHits > rhsHits) ? -1 : ((lhsHits == rhsHits) ? 0 : 1);
+            }
+        });
+        return entries;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.docrj.smartcard.iso7816;
+
+/**
+ * Writes a command APDU into one array, sized up front from Lc and whether
+ * there is an Le
+ *
+ * The header and Lc are written by the constructor; the data is then put
+ * (or written in place at reserve()'s offset) and finish() appends Le.
+ * Lc and Le are short (one byte) or extended (ISO 7816-4: a 00 marker then
+ * two bytes, where an Le that follows Lc drops the marker). As in
+ * CommandApdu, Le is the encoded value, so 0 asks for the most the card
+ * can send (256, or 65536 when extended).
+ *
+ * Example (GPO with a PDOL response):
+ *   ApduBuilder b = new ApduBuilder(0x80, 0xA8, 0x00, 0x00, lc, 0x00, false);
+ *   b.put(0x83).putBerLength(pdolData.length).put(pdolData);
+ *   byte[] apdu = b.finish();
+ */
+public final class ApduBuilder {
+
+    public static final int NO_LE = -1;
+
+    public static final int MAX_SHORT_LENGTH = 0xFF;
+    public static final int MAX_EXTENDED_LENGTH = 0xFFFF;
+
+    // header is CLA INS P1 P2
+    private static final int HEADER_LENGTH = 4;
+
+    private final byte[] mApdu;
+    private final int mLc;
+    private final int mLe;
+    private final boolean mExtended;
+    private final int mDataEnd;
+    private int mOffset;
+
+    public ApduBuilder(int cla, int ins, int p1, int p2, int lc, int le, boolean extended) {
+        int max = extended ? MAX_EXTENDED_LENGTH : MAX_SHORT_LENGTH;
+        if (lc < 0 || lc > max) {
+            throw new IllegalArgumentException("Invalid Lc: " + lc);
+        }
+        if (le < NO_LE || le > max) {
+            throw new IllegalArgumentException("Invalid Le: " + le);
+        }
+        mLc = lc;
+        mLe = le;
+        mExtended = extended;
+        mApdu = new byte[getLength(lc, le != NO_LE, extended)];
+        mApdu[0] = (byte) cla;
+        mApdu[1] = (byte) ins;
+        mApdu[2] = (byte) p1;
+        mApdu[3] = (byte) p2;
+        mOffset = HEADER_LENGTH;
+        if (lc != 0) {
+            if (extended) {
+                mApdu[mOffset++] = 0x00;
+                mApdu[mOffset++] = (byte) (lc >> 8);
+            }
+            mApdu[mOffset++] = (byte) lc;
+        }
+        mDataEnd = mOffset + lc;
+    }
+
+    /**
+     * Returns true if Lc or Le does not fit in a short length field
+     */
+    public static boolean needsExtended(int lc, int le) {
+        return lc > MAX_SHORT_LENGTH || le > MAX_SHORT_LENGTH;
+    }
+
+    /**
+     * Returns the length of the encoded command
+     */
+    public static int getLength(int lc, boolean leUsed, boolean extended) {
+        int length = HEADER_LENGTH;
+        if (lc != 0) {
+            length += (extended ? 3 : 1) + lc;
+        }
+        if (leUsed) {
+            length += !extended ? 1 : (lc != 0 ? 2 : 3);
+        }
+        return length;
+    }
+
+    /**
+     * Returns the number of bytes of a BER-TLV length field for length
+     */
+    public static int getBerLengthSize(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+        if (length < 0x80) {
+            return 1;
+        }
+        int size = 2;
+        while ((length >>>= 8) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the BER-TLV length field for length at out[offset], returning
+     * the offset after it
+     */
+    public static int writeBerLength(int length, byte[] out, int offset) {
+        int size = getBerLengthSize(length);
+        if (size == 1) {
+            out[offset] = (byte) length;
+            return offset + 1;
+        }
+        out[offset] = (byte) (0x80 | (size - 1));
+        for (int i = size - 1; i > 0; i--) {
+            out[offset + i] = (byte) length;
+            length >>>= 8;
+        }
+        return offset + size;
+    }
+
+    public ApduBuilder put(int b) {
+        ensureRoom(1);
+        mApdu[mOffset++] = (byte) b;
+        return this;
+    }
+
+    public ApduBuilder put(byte[] src) {
+        return put(src, 0, src.length);
+    }
+
+    public ApduBuilder put(byte[] src, int offset, int length) {
+        ensureRoom(length);
+        System.arraycopy(src, offset, mApdu, mOffset, length);
+        mOffset += length;
+        return this;
+    }
+
+    public ApduBuilder putBerLength(int length) {
+        ensureRoom(getBerLengthSize(length));
+        mOffset = writeBerLength(length, mApdu, mOffset);
+        return this;
+    }
+
+    /**
+     * Skips length bytes of data, to be written directly into array();
+     * returns the offset they start at
+     */
+    public int reserve(int length) {
+        ensureRoom(length);
+        int offset = mOffset;
+        mOffset += length;
+        return offset;
+    }
+
+    /**
+     * Returns the array being built; only the reserved data should be
+     * written to it
+     */
+    public byte[] array() {
+        return mApdu;
+    }
+
+    /**
+     * Returns the offset the next data byte will be put at
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    public int getLc() {
+        return mLc;
+    }
+
+    public boolean isExtended() {
+        return mExtended;
+    }
+
+    /**
+     * Appends Le, if any, and returns the command
+     *
+     * @throws IllegalStateException if fewer than Lc data bytes were put
+     */
+    public byte[] finish() {
+        if (mOffset != mDataEnd) {
+            throw new IllegalStateException("Data is " + (mOffset - mDataEnd + mLc) +
+                    " bytes, Lc is " + mLc);
+        }
+        if (mLe != NO_LE) {
+            if (mExtended) {
+                if (mLc == 0) {
+                    mApdu[mOffset++] = 0x00;
+                }
+                mApdu[mOffset++] = (byte) (mLe >> 8);
+            }
+            mApdu[mOffset++] = (byte) mLe;
+        }
+        return mApdu;
+    }
+
+    private void ensureRoom(int length) {
+        if (length < 0 || length > mDataEnd - mOffset) {
+            throw new IllegalStateException("Data exceeds Lc (" + mLc + ")");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/* 
+ * Copyright 2014 Ryan Jones
+ * 
+ * This file was modified from the original source:
+ * https://code.google.com/p/nfcspy/
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+/**
+ * Names commands and status words from the ISO 7816 APDU dictionary
+ *
+ * The dictionary (core/src/main/apdu/apdu7816.xml) is compiled at build time
+ * into ApduDictionary by core/apdudict.gradle, with one 256 entry page per
+ * node that has children. Each byte of the apdu selects the next node with a
+ * single array index, so a status word resolves in two lookups and nothing
+ * is parsed or allocated at run time.
+ */
+public final class ApduParser {
+
+    public static String parse(boolean isCmd, byte[] apdu) {
+        if (isCmd) {
+            return search(ApduDictionary.CMDS, apdu, 0);
+        }
+        final int len = apdu.length;
+        if (len > 1) {
+            return search(ApduDictionary.SWS, apdu, len - 2);
+        }
+        return "";
+    }
+
+    /**
+     * Returns the name of the deepest node matched by the bytes of apdu
+     * from start on, or "" if it has none
+     */
+    private static String search(int node, byte[] apdu, int start) {
+        final short[] pages = ApduDictionary.PAGES;
+        final char[] children = ApduDictionary.CHILDREN;
+        for (int i = start; i < apdu.length; i++) {
+            int page = pages[node];
+            if (page < 0) {
+                break;
+            }
+            int child = children[(page << 8) | (apdu[i] & 0xFF)];
+            if (child == 0) {
+                break;
+            }
+            node = child - 1;
+        }
+        return ApduDictionary.NAMES[node];
+    }
+
+    private ApduParser() {
+    }
+}
@@ -25,6 +25,7 @@ package org.docrj.smartcard.iso7816;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 import org.docrj.smartcard.util.Util;
 
@@ -35,6 +36,13 @@ public class BERTLV {
     private byte[] valueBytes;
     private int length;
 
+    // when created as a view, the length and value bytes live in buf
+    // and are only copied out on demand
+    private byte[] buf;
+    private int lengthOffset;
+    private int numLengthBytes;
+    private int valueOffset;
+
     /**
      *
      * @param tag
@@ -53,6 +61,28 @@ public class BERTLV {
         this.length = length;
     }
 
+    /**
+     * Creates a view over an encoded data object without copying
+     *
+     * @param tag
+     * @param buf the buffer containing the encoded data object
+     * @param lengthOffset offset of the raw encoded length bytes in buf
+     * @param numLengthBytes number of raw encoded length bytes
+     * @param valueOffset offset of the value bytes in buf
+     * @param length number of value bytes
+     */
+    public BERTLV(Tag tag, byte[] buf, int lengthOffset, int numLengthBytes, int valueOffset, int length) {
+        if (valueOffset + length > buf.length) {
+            throw new IllegalArgumentException("valueOffset + length > buf.length");
+        }
+        this.tag = tag;
+        this.buf = buf;
+        this.lengthOffset = lengthOffset;
+        this.numLengthBytes = numLengthBytes;
+        this.valueOffset = valueOffset;
+        this.length = length;
+    }
+
     public BERTLV(Tag tag, byte[] valueBytes) {
         this.tag = tag;
         this.rawEncodedLengthBytes = encodeLength(valueBytes.length);
@@ -60,9 +90,14 @@ public class BERTLV {
         this.length = valueBytes.length;
     }
     
+    /**
+     * Encodes length as a BER-TLV length field: one byte below 0x80, else
+     * 0x8n followed by the n bytes of the length
+     */
     public static byte[] encodeLength(int length){
-        // TODO
-        throw new UnsupportedOperationException("Not implemented yet");
+        byte[] encoded = new byte[ApduBuilder.getBerLengthSize(length)];
+        ApduBuilder.writeBerLength(length, encoded, 0);
+        return encoded;
     }
 
     public byte[] getTagBytes() {
@@ -70,32 +105,57 @@ public class BERTLV {
     }
 
     public byte[] getRawEncodedLengthBytes() {
+        if (rawEncodedLengthBytes == null) {
+            rawEncodedLengthBytes = Arrays.copyOfRange(buf, lengthOffset, lengthOffset + numLengthBytes);
+        }
         return rawEncodedLengthBytes;
     }
 
     public byte[] getValueBytes() {
+        if (valueBytes == null) {
+            valueBytes = Arrays.copyOfRange(buf, valueOffset, valueOffset + length);
+        }
         return valueBytes;
     }
 
+    /**
+     * Returns the buffer backing the value bytes; use with getValueOffset()
+     */
+    public byte[] getValueBuffer() {
+        return (valueBytes != null) ? valueBytes : buf;
+    }
+
+    public int getValueOffset() {
+        return (valueBytes != null) ? 0 : valueOffset;
+    }
+
     public ByteArrayInputStream getValueStream() {
-        return new ByteArrayInputStream(valueBytes);
+        return new ByteArrayInputStream(getValueBuffer(), getValueOffset(), length);
+    }
+
+    /**
+     * Returns a cursor over the value bytes, eg. the children of a template
+     */
+    public TLVCursor getValueCursor() {
+        return new TLVCursor(getValueBuffer(), getValueOffset(), length);
     }
 
     public byte[] toBERTLVByteArray() {
         byte[] tagBytes = tag.getTagBytes();
+        byte[] lengthBytes = getRawEncodedLengthBytes();
         ByteArrayOutputStream stream =
-            new ByteArrayOutputStream(tagBytes.length + rawEncodedLengthBytes.length + valueBytes.length);
+            new ByteArrayOutputStream(tagBytes.length + lengthBytes.length + length);
         stream.write(tagBytes, 0, tagBytes.length);
-        stream.write(rawEncodedLengthBytes, 0, rawEncodedLengthBytes.length);
-        stream.write(valueBytes, 0, valueBytes.length);
+        stream.write(lengthBytes, 0, lengthBytes.length);
+        stream.write(getValueBuffer(), getValueOffset(), length);
         return stream.toByteArray();
     }
 
     @Override
     public String toString() {
         return "BER-TLV[" + Util.byteArrayToHexString(getTagBytes()) + ", " + Util.int2Hex(length) +
-            " (raw " + Util.byteArrayToHexString(rawEncodedLengthBytes) + ")" + ", " +
-            Util.byteArrayToHexString(valueBytes) + "]";
+            " (raw " + Util.byteArrayToHexString(getRawEncodedLengthBytes()) + ")" + ", " +
+            Util.byteArrayToHexString(getValueBuffer(), getValueOffset(), length) + "]";
     }
 
     public Tag getTag() {
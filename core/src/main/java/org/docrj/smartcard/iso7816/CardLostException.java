@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a CardTransport when the card has left the field, so the xcvrs
+ * can tell the user rather than report an i/o error (for IsoDep, in place
+ * of android.nfc.TagLostException)
+ */
+public class CardLostException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CardLostException(String message) {
+        super(message);
+    }
+
+    public CardLostException(Throwable cause) {
+        super(cause);
+    }
+}
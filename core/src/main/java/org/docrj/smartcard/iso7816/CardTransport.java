@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.io.IOException;
+
+/**
+ * Connection to a smartcard that exchanges raw APDUs
+ *
+ * Mirrors the parts of android.nfc.tech.IsoDep the reader uses, so the
+ * xcvrs can run against a real card (IsoDepTransport) or a simulated one
+ * (ScriptedCard). Implementations throw CardLostException when the card
+ * goes away, and IOException for other i/o errors.
+ */
+public interface CardTransport {
+
+    public void connect() throws IOException;
+
+    public boolean isConnected();
+
+    /**
+     * Sends a command APDU and returns the response APDU, including SW1 SW2
+     */
+    public byte[] transceive(byte[] command) throws IOException;
+
+    public void close() throws IOException;
+
+    /**
+     * Maximum number of bytes that can be sent with transceive()
+     */
+    public int getMaxTransceiveLength();
+
+    /**
+     * Whether commands with extended (three byte) Lc and Le fields can be
+     * sent; the card may still reject them
+     */
+    public boolean isExtendedLengthApduSupported();
+
+    /**
+     * Timeout of transceive() in milliseconds
+     */
+    public int getTimeout();
+
+    public void setTimeout(int timeout);
+}
@@ -149,44 +149,58 @@ public class CommandApdu {
         return mLe;
     }
 
-    public static String toString(byte[] cmdApdu, int Lc) {
-        String cmd = Util.bytesToHex(cmdApdu);
-        return cmd.substring(0, 8) + " " + cmd.substring(8, 10) + " " +
-            cmd.substring(10, 10 + Lc*2) + " " + cmd.substring(10 + Lc*2, cmd.length());
+    public boolean isLeUsed() {
+        return mLeUsed;
     }
 
+    public static String toString(byte[] cmdApdu, int Lc) {
+        StringBuilder out = new StringBuilder(cmdApdu.length * 2 + 3);
+        appendTo(out, cmdApdu, Lc);
+        return out.toString();
+    }
+
+    /**
+     * Appends the command as upper case hex, split into header, Lc, data
+     * and Le (eg. "00A40400 07 A0000000031010 00", or extended
+     * "00A40400 000007 A0000000031010 0000")
+     */
+    public static StringBuilder appendTo(StringBuilder out, byte[] cmdApdu, int Lc) {
+        // extended Lc is 00 then two bytes; with no data, so is Le
+        boolean extended = cmdApdu.length > 4 && cmdApdu[4] == 0
+                && (Lc != 0 ? cmdApdu.length >= 7 + Lc : cmdApdu.length == 7);
+        int lcOffset = Math.min(4, cmdApdu.length);
+        int dataOffset = Math.min(extended ? 7 : 5, cmdApdu.length);
+        int leOffset = Math.min(dataOffset + Lc, cmdApdu.length);
+        Util.appendHex(out, cmdApdu, 0, lcOffset, true).append(' ');
+        Util.appendHex(out, cmdApdu, lcOffset, dataOffset - lcOffset, true).append(' ');
+        Util.appendHex(out, cmdApdu, dataOffset, leOffset - dataOffset, true).append(' ');
+        return Util.appendHex(out, cmdApdu, leOffset, cmdApdu.length - leOffset, true);
+    }
+
+    /**
+     * Encodes the command with short Lc and Le fields, or extended ones if
+     * Lc or Le does not fit in a byte
+     */
     public byte[] toBytes() {
-        int length = 4; // CLA, INS, P1, P2
-        if (mData.length != 0) {
-            length += 1; // LC
-            length += mData.length; // DATA
-        }
-        if (mLeUsed) {
-            length += 1; // LE
-        }
+        return toBytes(false);
+    }
 
-        byte[] apdu = new byte[length];
-
-        int index = 0;
-        apdu[index] = (byte) mCla;
-        index++;
-        apdu[index] = (byte) mIns;
-        index++;
-        apdu[index] = (byte) mP1;
-        index++;
-        apdu[index] = (byte) mP2;
-        index++;
-        if (mData.length != 0) {
-            apdu[index] = (byte) mLc;
-            index++;
-            System.arraycopy(mData, 0, apdu, index, mData.length);
-            index += mData.length;
-        }
-        if (mLeUsed) {
-            apdu[index] += (byte) mLe; // LE
-        }
+    /**
+     * Encodes the command as ISO 7816-4 case 1, 2, 3 or 4 (by whether there
+     * is data and an Le), with extended Lc and Le fields if extended is set
+     * or they do not fit in a byte
+     *
+     * Extended lengths let the card answer with up to 65536 bytes when Le
+     * is 0, but the reader and card must both support them.
+     */
+    public byte[] toBytes(boolean extended) {
+        ApduBuilder builder = new ApduBuilder(mCla, mIns, mP1, mP2, mData.length,
+                mLeUsed ? mLe : ApduBuilder.NO_LE, extended || needsExtendedLength());
+        return builder.put(mData).finish();
+    }
 
-        return apdu;
+    protected boolean needsExtendedLength() {
+        return ApduBuilder.needsExtended(mLc, mLeUsed ? mLe : 0);
     }
 
     public static boolean compareHeaders(byte[] header1, byte[] mask,
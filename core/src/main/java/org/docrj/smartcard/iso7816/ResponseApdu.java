@@ -25,6 +25,8 @@ package org.docrj.smartcard.iso7816;
 
 import java.security.AccessControlException;
 
+import org.docrj.smartcard.emv.TagProvider;
+
 public class ResponseApdu {
 
     protected int mSw1 = 0x00;
@@ -33,6 +35,9 @@ public class ResponseApdu {
     protected byte[] mData = new byte[0];
     protected byte[] mBytes = new byte[0];
 
+    // lazily parsed tlv tree, shared by everyone consuming this response
+    private TLVNode mDataTree;
+
     public ResponseApdu(byte[] respApdu) {
         if (respApdu.length < 2) {
             return;
@@ -62,6 +67,29 @@ public class ResponseApdu {
         return mData;
     }
 
+    /**
+     * Returns the response data as a TLV tree, parsed once on first access
+     *
+     * @throws TLVException if the top level data objects are malformed
+     */
+    public TLVNode getDataTree() {
+        return getDataTree(TLVUtil.getDefaultTagProvider());
+    }
+
+    /**
+     * Same as getDataTree(), with tags resolved by tagProvider (eg. the
+     * selected app's EMVApp.getTagResolver()); the tree is parsed again only
+     * if a different provider is passed
+     */
+    public TLVNode getDataTree(TagProvider tagProvider) {
+        TLVNode dataTree = mDataTree;
+        if (dataTree == null || dataTree.getTagProvider() != tagProvider) {
+            dataTree = TLVNode.parse(mData, tagProvider);
+            mDataTree = dataTree;
+        }
+        return dataTree;
+    }
+
     public byte[] toBytes() {
         return mBytes;        
     }
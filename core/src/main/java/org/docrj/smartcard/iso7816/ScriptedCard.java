@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.docrj.smartcard.util.Util;
+
+/**
+ * In-memory card that replays a script of recorded APDU exchanges, for
+ * running and timing the read flows without a device or a real card
+ *
+ * Commands must arrive in script order; connect() rewinds to the start, so
+ * one instance can be read any number of times. Latency per exchange is
+ * simulated as a fixed delay plus a delay per byte sent and received.
+ *
+ * Example:
+ *   ScriptedCard card = new ScriptedCard()
+ *       .add("00A404000E325041592E5359532E444446303100", "6F..9000")
+ *       .addMatchingHeader("80A8000000", "77..9000") // gpo data varies
+ *       .setLatency(2000, 10);
+ *
+ * Not thread-safe; meant to be driven by a single xcvr thread.
+ */
+public final class ScriptedCard implements CardTransport {
+
+    // header is CLA INS P1 P2
+    private static final int HEADER_LENGTH = 4;
+
+    private static final class Exchange {
+        final byte[] command;
+        final byte[] response;
+        final boolean matchHeaderOnly;
+
+        Exchange(byte[] command, byte[] response, boolean matchHeaderOnly) {
+            this.command = command;
+            this.response = response;
+            this.matchHeaderOnly = matchHeaderOnly;
+        }
+
+        boolean matches(byte[] cmd) {
+            if (!matchHeaderOnly) {
+                return Arrays.equals(command, cmd);
+            }
+            if (cmd.length < HEADER_LENGTH) {
+                return false;
+            }
+            for (int i = 0; i < HEADER_LENGTH; i++) {
+                if (command[i] != cmd[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final List<Exchange> mScript = new ArrayList<Exchange>();
+    private int mNext;
+    private boolean mConnected;
+    private long mTransceiveCount;
+
+    private long mFixedLatencyNanos;
+    private long mPerByteLatencyNanos;
+    private int mMaxTransceiveLength = 261;
+    private boolean mExtendedLengthApduSupported;
+    private int mTimeout = 1000;
+
+    /**
+     * Appends an exchange whose command must match exactly
+     */
+    public ScriptedCard add(byte[] command, byte[] response) {
+        return add(command, response, false);
+    }
+
+    public ScriptedCard add(String commandHex, String responseHex) {
+        return add(Util.hexToBytes(commandHex), Util.hexToBytes(responseHex), false);
+    }
+
+    /**
+     * Appends an exchange matched on the CLA INS P1 P2 header only, for
+     * commands whose data varies between runs (eg. GPO with an unpredictable
+     * number in the PDOL data)
+     */
+    public ScriptedCard addMatchingHeader(byte[] command, byte[] response) {
+        return add(command, response, true);
+    }
+
+    public ScriptedCard addMatchingHeader(String commandHex, String responseHex) {
+        return add(Util.hexToBytes(commandHex), Util.hexToBytes(responseHex), true);
+    }
+
+    private ScriptedCard add(byte[] command, byte[] response, boolean matchHeaderOnly) {
+        if (command.length < HEADER_LENGTH) {
+            throw new IllegalArgumentException("Command must be at least " +
+                    HEADER_LENGTH + " bytes: " + Util.bytesToHex(command));
+        }
+        if (response.length < 2) {
+            throw new IllegalArgumentException("Response must include SW1 SW2: " +
+                    Util.bytesToHex(response));
+        }
+        mScript.add(new Exchange(command.clone(), response.clone(), matchHeaderOnly));
+        return this;
+    }
+
+    /**
+     * @param fixedMicros delay added to every exchange
+     * @param perByteMicros delay per command and response byte
+     */
+    public ScriptedCard setLatency(long fixedMicros, long perByteMicros) {
+        if (fixedMicros < 0 || perByteMicros < 0) {
+            throw new IllegalArgumentException("Latency cannot be negative");
+        }
+        mFixedLatencyNanos = fixedMicros * 1000;
+        mPerByteLatencyNanos = perByteMicros * 1000;
+        return this;
+    }
+
+    public ScriptedCard setMaxTransceiveLength(int maxTransceiveLength) {
+        mMaxTransceiveLength = maxTransceiveLength;
+        return this;
+    }
+
+    /**
+     * Off by default, so the xcvrs send short commands; the script must
+     * then expect extended ones where they prefer them
+     */
+    public ScriptedCard setExtendedLengthApduSupported(boolean supported) {
+        mExtendedLengthApduSupported = supported;
+        return this;
+    }
+
+    /**
+     * Number of exchanges replayed since this card was created
+     */
+    public long getTransceiveCount() {
+        return mTransceiveCount;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (mConnected) {
+            throw new IllegalStateException("Already connected");
+        }
+        mConnected = true;
+        mNext = 0;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        if (!mConnected) {
+            throw new IllegalStateException("Call connect() first!");
+        }
+        if (command.length > mMaxTransceiveLength) {
+            throw new IOException("Transceive length exceeds supported maximum");
+        }
+        if (mNext == mScript.size()) {
+            throw new IOException("End of card script, unexpected command: " +
+                    Util.bytesToHex(command));
+        }
+        Exchange exchange = mScript.get(mNext);
+        if (!exchange.matches(command)) {
+            throw new IOException("Card script step " + mNext + " expected " +
+                    Util.bytesToHex(exchange.command) + ", got " + Util.bytesToHex(command));
+        }
+        mNext++;
+        mTransceiveCount++;
+
+        long latencyNanos = mFixedLatencyNanos +
+                mPerByteLatencyNanos * (command.length + exchange.response.length);
+        if (latencyNanos > 0) {
+            sleep(latencyNanos);
+        }
+        return exchange.response.clone();
+    }
+
+    private static void sleep(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        // parkNanos may return early
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mConnected = false;
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return mMaxTransceiveLength;
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return mExtendedLengthApduSupported;
+    }
+
+    @Override
+    public int getTimeout() {
+        return mTimeout;
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        mTimeout = timeout;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.util.Arrays;
+
+import org.docrj.smartcard.emv.TagProvider;
+import org.docrj.smartcard.util.Util;
+
+/**
+ * Cursor over BER-TLV encoded data
+ *
+ * Walks a single byte array by offset; the tag, length and value of the
+ * current data object are exposed as index ranges into the original buffer,
+ * so nothing is copied unless the caller asks for it.
+ *
+ * Example:
+ *   TLVCursor c = new TLVCursor(data);
+ *   while (c.next()) {
+ *       if (c.getTag().isConstructed()) {
+ *           TLVCursor children = c.children();
+ *           ...
+ *       }
+ *   }
+ */
+public final class TLVCursor {
+
+    private final byte[] mBuf;
+    private final int mEnd;
+    private final TagProvider mTagProvider;
+    private int mPos;
+
+    // current data object
+    private int mTagOffset = -1;
+    private int mTagLength;
+    private int mLengthOffset;
+    private int mLengthLength;
+    private int mValueOffset;
+    private int mValueLength;
+    private Tag mTag;
+
+    public TLVCursor(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public TLVCursor(byte[] buf, int offset, int length) {
+        this(buf, offset, length, TLVUtil.getDefaultTagProvider());
+    }
+
+    /**
+     * @param tagProvider used by getTag(), eg. the app's EMVApp.getTagResolver()
+     */
+    public TLVCursor(byte[] buf, int offset, int length, TagProvider tagProvider) {
+        if (buf == null) {
+            throw new IllegalArgumentException("Param buf cannot be null");
+        }
+        if (tagProvider == null) {
+            throw new IllegalArgumentException("Param tagProvider cannot be null");
+        }
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new IllegalArgumentException("offset(" + offset + ")+length(" + length +
+                    ") > buf.length(" + buf.length + ")");
+        }
+        mBuf = buf;
+        mPos = offset;
+        mEnd = offset + length;
+        mTagProvider = tagProvider;
+    }
+
+    /**
+     * Number of bytes not yet consumed, including any padding
+     */
+    public int remaining() {
+        return mEnd - mPos;
+    }
+
+    /**
+     * Advances to the next data object
+     *
+     * ISO/IEC 7816 uses neither '00' nor 'FF' as tag value. Before, between,
+     * or after TLV-coded data objects, '00' or 'FF' bytes without any meaning
+     * may occur (for example, due to erased or modified TLV-coded data
+     * objects); these are skipped.
+     *
+     * @return false if no data object remains
+     */
+    public boolean next() {
+        skipPadding();
+        if (mPos >= mEnd) {
+            mTagOffset = -1;
+            return false;
+        }
+        if (mEnd - mPos < 2) {
+            throw new TLVException("Error parsing data. Available bytes < 2 . Length=" + (mEnd - mPos));
+        }
+        mTag = null;
+        mTagOffset = mPos;
+        mTagLength = readTagIdLength(mBuf, mPos, mEnd);
+        mPos += mTagLength;
+
+        mLengthOffset = mPos;
+        if (mPos >= mEnd) {
+            throw new TLVException("EOS when reading length bytes");
+        }
+        int first = mBuf[mPos++] & 0xFF;
+        if (first == 0x80) {
+            // indefinite form, value is terminated by 0x0000
+            // indefinite form is not specified in ISO7816-4, but we include it here for completeness
+            mLengthLength = 1;
+            mValueOffset = mPos;
+            int i = mPos;
+            while (i + 1 < mEnd && (mBuf[i] != 0x00 || mBuf[i + 1] != 0x00)) {
+                i++;
+            }
+            if (i + 1 >= mEnd) {
+                throw new TLVException("Error parsing data. TLV "
+                        + "length byte indicated indefinite length, but EOS "
+                        + "was reached before 0x0000 was found");
+            }
+            mValueLength = i - mValueOffset;
+            mPos = i + 2;
+        } else {
+            int length;
+            if (first <= 0x7F) {
+                // short length form
+                length = first;
+            } else {
+                // long length form
+                int numLengthOctets = first & 0x7F;
+                length = 0;
+                for (int i = 0; i < numLengthOctets; i++) {
+                    if (mPos >= mEnd) {
+                        throw new TLVException("EOS when reading length bytes");
+                    }
+                    length = (length << 8) | (mBuf[mPos++] & 0xFF);
+                }
+            }
+            mLengthLength = mPos - mLengthOffset;
+            if (mLengthLength > 4) {
+                throw new TLVException("Number of length bytes must be from 1 to 4. Found " + mLengthLength);
+            }
+            int available = mEnd - mPos;
+            if (length < 0 || available < length) {
+                throw new TLVException("Length byte(s) indicated " + length +
+                        " value bytes, but only " + available + " " +
+                        (available > 1 ? "are" : "is") + " available");
+            }
+            mValueOffset = mPos;
+            mValueLength = length;
+            mPos += length;
+        }
+        skipPadding();
+        return true;
+    }
+
+    private void skipPadding() {
+        while (mPos < mEnd && (mBuf[mPos] == (byte) 0x00 || mBuf[mPos] == (byte) 0xFF)) {
+            mPos++;
+        }
+    }
+
+    /**
+     * Returns the number of tag id bytes starting at offset
+     * (EMV book 3, Annex B1)
+     */
+    static int readTagIdLength(byte[] buf, int offset, int end) {
+        int i = offset + 1;
+        if ((buf[offset] & 0x1F) == 0x1F) {
+            // tag field is longer than 1 byte
+            while (i < end) {
+                byte b = buf[i++];
+                if ((b & 0x80) == 0 || (b & 0x7F) == 0) {
+                    break;
+                }
+            }
+        }
+        return i - offset;
+    }
+
+    private void checkCurrent() {
+        if (mTagOffset < 0) {
+            throw new IllegalStateException("No current data object; call next() first");
+        }
+    }
+
+    public byte[] getBuffer() {
+        return mBuf;
+    }
+
+    public int getTagOffset() {
+        checkCurrent();
+        return mTagOffset;
+    }
+
+    public int getTagLength() {
+        checkCurrent();
+        return mTagLength;
+    }
+
+    public int getLengthOffset() {
+        checkCurrent();
+        return mLengthOffset;
+    }
+
+    /**
+     * Number of raw encoded length bytes
+     */
+    public int getLengthLength() {
+        checkCurrent();
+        return mLengthLength;
+    }
+
+    public int getValueOffset() {
+        checkCurrent();
+        return mValueOffset;
+    }
+
+    /**
+     * Number of value bytes (decoded from the length bytes)
+     */
+    public int getValueLength() {
+        checkCurrent();
+        return mValueLength;
+    }
+
+    /**
+     * Tag id bytes packed big-endian into an int, eg. '9F38' = 0x9F38
+     */
+    public int getTagId() {
+        checkCurrent();
+        if (mTagLength > 4) {
+            throw new TLVException("Tag id longer than 4 bytes: " +
+                    Util.byteArrayToHexString(mBuf, mTagOffset, mTagLength));
+        }
+        int id = 0;
+        for (int i = 0; i < mTagLength; i++) {
+            id = (id << 8) | (mBuf[mTagOffset + i] & 0xFF);
+        }
+        return id;
+    }
+
+    public boolean isConstructed() {
+        checkCurrent();
+        return (mBuf[mTagOffset] & 0x20) != 0;
+    }
+
+    public Tag getTag() {
+        checkCurrent();
+        if (mTag == null) {
+            mTag = mTagProvider.getNotNull(mBuf, mTagOffset, mTagLength);
+        }
+        return mTag;
+    }
+
+    public byte[] getTagBytes() {
+        checkCurrent();
+        return Arrays.copyOfRange(mBuf, mTagOffset, mTagOffset + mTagLength);
+    }
+
+    public byte[] getValueBytes() {
+        checkCurrent();
+        return Arrays.copyOfRange(mBuf, mValueOffset, mValueOffset + mValueLength);
+    }
+
+    /**
+     * Returns a lightweight BERTLV view of the current data object
+     * backed by the original buffer
+     */
+    public BERTLV getTLV() {
+        checkCurrent();
+        return new BERTLV(getTag(), mBuf, mLengthOffset, mLengthLength,
+                mValueOffset, mValueLength);
+    }
+
+    /**
+     * Returns a cursor over the value bytes of the current data object,
+     * typically a constructed one
+     */
+    public TLVCursor children() {
+        checkCurrent();
+        return new TLVCursor(mBuf, mValueOffset, mValueLength, mTagProvider);
+    }
+}
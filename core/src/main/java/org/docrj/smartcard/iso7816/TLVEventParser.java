@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.util.Arrays;
+
+import org.docrj.smartcard.emv.TagProvider;
+
+/**
+ * Push style (SAX-like) BER-TLV parser
+ *
+ * Data may be fed in chunks of any size; a data object may span chunk
+ * boundaries. Only the value of the primitive data object currently being
+ * read is buffered, never the whole response. Indefinite length (0x80)
+ * data objects are terminated incrementally by their end-of-contents
+ * octets (0x0000).
+ *
+ * Example:
+ *   TLVEventParser parser = new TLVEventParser(handler);
+ *   while ((n = in.read(chunk)) != -1) {
+ *       parser.feed(chunk, 0, n);
+ *   }
+ *   parser.end();
+ */
+public final class TLVEventParser {
+
+    public interface Handler {
+        /**
+         * @param length number of value bytes, or INDEFINITE_LENGTH
+         */
+        void startConstructed(Tag tag, int length);
+
+        /**
+         * The value bytes are only valid for the duration of the call
+         */
+        void primitive(Tag tag, byte[] buf, int offset, int length);
+
+        void endConstructed(Tag tag);
+    }
+
+    public static final int INDEFINITE_LENGTH = -1;
+
+    private static final long NO_END = -1;
+
+    // expecting a tag, padding or end-of-contents
+    private static final int STATE_TAG_START = 0;
+    // read the first end-of-contents octet of an indefinite length template
+    private static final int STATE_EOC = 1;
+    private static final int STATE_TAG = 2;
+    private static final int STATE_LENGTH_START = 3;
+    private static final int STATE_LENGTH = 4;
+    private static final int STATE_VALUE = 5;
+    private static final int STATE_VALUE_INDEFINITE = 6;
+
+    private final Handler mHandler;
+    private final TagProvider mTagProvider;
+
+    private int mState = STATE_TAG_START;
+    // number of bytes consumed so far
+    private long mPos;
+
+    // current data object
+    private byte[] mTagBytes = new byte[4];
+    private int mTagLength;
+    private int mLengthBytesLeft;
+    private int mNumLengthBytes;
+    private int mLength;
+    private byte[] mValue = new byte[64];
+    private int mValueLength;
+
+    // open constructed data objects
+    private Tag[] mTags = new Tag[8];
+    private long[] mEnds = new long[8];
+    private int mDepth;
+
+    public TLVEventParser(Handler handler) {
+        this(handler, TLVUtil.getDefaultTagProvider());
+    }
+
+    /**
+     * @param tagProvider resolves the tags passed to the handler, eg. the
+     *        app's EMVApp.getTagResolver()
+     */
+    public TLVEventParser(Handler handler, TagProvider tagProvider) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Param handler cannot be null");
+        }
+        if (tagProvider == null) {
+            throw new IllegalArgumentException("Param tagProvider cannot be null");
+        }
+        mHandler = handler;
+        mTagProvider = tagProvider;
+    }
+
+    /**
+     * Discards any partially parsed data so the parser can be reused
+     */
+    public void reset() {
+        mState = STATE_TAG_START;
+        mPos = 0;
+        mDepth = 0;
+        Arrays.fill(mTags, null);
+    }
+
+    public void feed(byte[] buf) {
+        feed(buf, 0, buf.length);
+    }
+
+    public void feed(byte[] buf, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new IllegalArgumentException("offset(" + offset + ")+length(" + length +
+                    ") > buf.length(" + buf.length + ")");
+        }
+        int i = offset;
+        int end = offset + length;
+
+        while (i < end) {
+            if (mState == STATE_VALUE) {
+                // copy as much of the value as this chunk holds
+                int n = Math.min(end - i, mLength - mValueLength);
+                appendValue(buf, i, n);
+                i += n;
+                mPos += n;
+                if (mValueLength == mLength) {
+                    endPrimitive();
+                }
+                continue;
+            }
+
+            if (mState == STATE_TAG_START) {
+                closeFinished();
+            }
+            int b = buf[i++] & 0xFF;
+            mPos++;
+
+            switch (mState) {
+                case STATE_TAG_START:
+                    startTag(b);
+                    break;
+                case STATE_EOC:
+                    if (b == 0x00) {
+                        endConstructed();
+                    } else {
+                        // the first 0x00 was only padding
+                        mState = STATE_TAG_START;
+                        startTag(b);
+                    }
+                    break;
+                case STATE_TAG:
+                    addTagByte(b);
+                    checkBounds();
+                    if ((b & 0x80) == 0 || (b & 0x7F) == 0) {
+                        mState = STATE_LENGTH_START;
+                    }
+                    break;
+                case STATE_LENGTH_START:
+                    checkBounds();
+                    if (b == 0x80) {
+                        startIndefinite();
+                    } else if (b < 0x80) {
+                        // short length form
+                        mLength = b;
+                        startValue();
+                    } else {
+                        // long length form
+                        mNumLengthBytes = (b & 0x7F) + 1;
+                        if (mNumLengthBytes > 4) {
+                            throw new TLVException("Number of length bytes must be from 1 to 4. Found " +
+                                    mNumLengthBytes);
+                        }
+                        mLengthBytesLeft = mNumLengthBytes - 1;
+                        mLength = 0;
+                        mState = STATE_LENGTH;
+                    }
+                    break;
+                case STATE_LENGTH:
+                    checkBounds();
+                    mLength = (mLength << 8) | b;
+                    if (--mLengthBytesLeft == 0) {
+                        startValue();
+                    }
+                    break;
+                case STATE_VALUE_INDEFINITE:
+                    checkBounds();
+                    // value is terminated by the first 0x0000
+                    if (b == 0x00 && mValueLength > 0 && mValue[mValueLength - 1] == 0x00) {
+                        mValueLength--;
+                        endPrimitive();
+                    } else {
+                        appendValue(b);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Signals the end of the data
+     *
+     * @throws TLVException if a data object is incomplete
+     */
+    public void end() {
+        closeFinished();
+        if (mState == STATE_VALUE_INDEFINITE) {
+            throw new TLVException("Error parsing data. TLV "
+                    + "length byte indicated indefinite length, but EOS "
+                    + "was reached before 0x0000 was found");
+        }
+        if (mState != STATE_TAG_START || mDepth > 0) {
+            throw new TLVException("Error parsing data. EOS reached inside a data object at byte " + mPos);
+        }
+    }
+
+    private void startTag(int b) {
+        if (mDepth > 0 && mEnds[mDepth - 1] == NO_END && b == 0x00) {
+            mState = STATE_EOC;
+            return;
+        }
+        if (b == 0x00 || b == 0xFF) {
+            // ISO/IEC 7816 uses neither '00' nor 'FF' as tag value; skip padding
+            return;
+        }
+        mTagLength = 0;
+        addTagByte(b);
+        checkBounds();
+        mState = ((b & 0x1F) == 0x1F) ? STATE_TAG : STATE_LENGTH_START;
+    }
+
+    private void addTagByte(int b) {
+        if (mTagLength == mTagBytes.length) {
+            mTagBytes = Arrays.copyOf(mTagBytes, mTagLength * 2);
+        }
+        mTagBytes[mTagLength++] = (byte) b;
+    }
+
+    private boolean isConstructed() {
+        return (mTagBytes[0] & 0x20) != 0;
+    }
+
+    private Tag currentTag() {
+        return mTagProvider.getNotNull(mTagBytes, 0, mTagLength);
+    }
+
+    // the data object must not run past the end of the enclosing template
+    private void checkBounds() {
+        if (mDepth > 0) {
+            long end = mEnds[mDepth - 1];
+            if (end != NO_END && mPos > end) {
+                throw new TLVException("Error parsing data. Data object runs past the end " +
+                        "of its template at byte " + mPos);
+            }
+        }
+    }
+
+    private void startIndefinite() {
+        if (isConstructed()) {
+            Tag tag = currentTag();
+            push(tag, NO_END);
+            mState = STATE_TAG_START;
+            mHandler.startConstructed(tag, INDEFINITE_LENGTH);
+        } else {
+            mValueLength = 0;
+            mState = STATE_VALUE_INDEFINITE;
+        }
+    }
+
+    private void startValue() {
+        if (mLength < 0) {
+            throw new TLVException("Length byte(s) indicated an invalid length: " + mLength);
+        }
+        if (mDepth > 0) {
+            long end = mEnds[mDepth - 1];
+            if (end != NO_END && mPos + mLength > end) {
+                long available = end - mPos;
+                throw new TLVException("Length byte(s) indicated " + mLength +
+                        " value bytes, but only " + available + " " +
+                        (available > 1 ? "are" : "is") + " available");
+            }
+        }
+        if (isConstructed()) {
+            Tag tag = currentTag();
+            push(tag, mPos + mLength);
+            mState = STATE_TAG_START;
+            mHandler.startConstructed(tag, mLength);
+            closeFinished();
+        } else {
+            mValueLength = 0;
+            if (mLength == 0) {
+                endPrimitive();
+            } else {
+                mState = STATE_VALUE;
+            }
+        }
+    }
+
+    private void appendValue(byte[] buf, int offset, int length) {
+        // grow as bytes arrive rather than trusting the length bytes up front
+        if (mValueLength + length > mValue.length) {
+            mValue = Arrays.copyOf(mValue, Math.max(mValueLength + length, mValue.length * 2));
+        }
+        System.arraycopy(buf, offset, mValue, mValueLength, length);
+        mValueLength += length;
+    }
+
+    private void appendValue(int b) {
+        if (mValueLength == mValue.length) {
+            mValue = Arrays.copyOf(mValue, mValue.length * 2);
+        }
+        mValue[mValueLength++] = (byte) b;
+    }
+
+    private void endPrimitive() {
+        mState = STATE_TAG_START;
+        mHandler.primitive(currentTag(), mValue, 0, mValueLength);
+        closeFinished();
+    }
+
+    // end-of-contents of an indefinite length template
+    private void endConstructed() {
+        mState = STATE_TAG_START;
+        mHandler.endConstructed(pop());
+        closeFinished();
+    }
+
+    // ends any definite length templates whose value bytes have all been read
+    private void closeFinished() {
+        while (mDepth > 0 && mEnds[mDepth - 1] == mPos) {
+            mHandler.endConstructed(pop());
+        }
+    }
+
+    private void push(Tag tag, long end) {
+        if (mDepth == mTags.length) {
+            mTags = Arrays.copyOf(mTags, mDepth * 2);
+            mEnds = Arrays.copyOf(mEnds, mDepth * 2);
+        }
+        mTags[mDepth] = tag;
+        mEnds[mDepth] = end;
+        mDepth++;
+    }
+
+    private Tag pop() {
+        Tag tag = mTags[--mDepth];
+        mTags[mDepth] = null;
+        return tag;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.docrj.smartcard.emv.TagProvider;
+
+/**
+ * Pull style counterpart of TLVEventParser, reading from an InputStream
+ *
+ * Example:
+ *   TLVEventReader reader = new TLVEventReader(in);
+ *   int event;
+ *   while ((event = reader.next()) != TLVEventReader.END_DOCUMENT) {
+ *       if (event == TLVEventReader.PRIMITIVE) {
+ *           Tag tag = reader.getTag();
+ *           byte[] value = reader.getValueBytes();
+ *           ...
+ *       }
+ *   }
+ */
+public final class TLVEventReader {
+
+    public static final int START_CONSTRUCTED = 1;
+    public static final int PRIMITIVE = 2;
+    public static final int END_CONSTRUCTED = 3;
+    public static final int END_DOCUMENT = 4;
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private static final class Event {
+        final int type;
+        final Tag tag;
+        final int length;
+        final byte[] value;
+
+        Event(int type, Tag tag, int length, byte[] value) {
+            this.type = type;
+            this.tag = tag;
+            this.length = length;
+            this.value = value;
+        }
+    }
+
+    private final InputStream mIn;
+    private final byte[] mChunk;
+    private final ArrayDeque<Event> mEvents = new ArrayDeque<Event>();
+    private final TLVEventParser mParser;
+    private boolean mEof;
+    private Event mCurrent;
+
+    public TLVEventReader(InputStream in) {
+        this(in, CHUNK_SIZE);
+    }
+
+    public TLVEventReader(InputStream in, int chunkSize) {
+        this(in, chunkSize, TLVUtil.getDefaultTagProvider());
+    }
+
+    public TLVEventReader(InputStream in, int chunkSize, TagProvider tagProvider) {
+        if (in == null) {
+            throw new IllegalArgumentException("Param in cannot be null");
+        }
+        mIn = in;
+        mChunk = new byte[chunkSize];
+        mParser = new TLVEventParser(new TLVEventParser.Handler() {
+            @Override
+            public void startConstructed(Tag tag, int length) {
+                mEvents.add(new Event(START_CONSTRUCTED, tag, length, null));
+            }
+
+            @Override
+            public void primitive(Tag tag, byte[] buf, int offset, int length) {
+                mEvents.add(new Event(PRIMITIVE, tag, length,
+                        Arrays.copyOfRange(buf, offset, offset + length)));
+            }
+
+            @Override
+            public void endConstructed(Tag tag) {
+                mEvents.add(new Event(END_CONSTRUCTED, tag, 0, null));
+            }
+        }, tagProvider);
+    }
+
+    /**
+     * Advances to the next event, reading from the stream as needed
+     *
+     * @return START_CONSTRUCTED, PRIMITIVE, END_CONSTRUCTED or END_DOCUMENT
+     * @throws TLVException if the data is malformed
+     */
+    public int next() throws IOException {
+        while (mEvents.isEmpty() && !mEof) {
+            int n = mIn.read(mChunk);
+            if (n == -1) {
+                mEof = true;
+                mParser.end();
+            } else {
+                mParser.feed(mChunk, 0, n);
+            }
+        }
+        mCurrent = mEvents.poll();
+        return (mCurrent == null) ? END_DOCUMENT : mCurrent.type;
+    }
+
+    private Event current() {
+        if (mCurrent == null) {
+            throw new IllegalStateException("No current event; call next() first");
+        }
+        return mCurrent;
+    }
+
+    public Tag getTag() {
+        return current().tag;
+    }
+
+    /**
+     * Number of value bytes, or TLVEventParser.INDEFINITE_LENGTH for
+     * indefinite length templates
+     */
+    public int getLength() {
+        return current().length;
+    }
+
+    /**
+     * Value bytes of a PRIMITIVE event, null otherwise
+     */
+    public byte[] getValueBytes() {
+        return current().value;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.docrj.smartcard.emv.TagProvider;
+
+/**
+ * Lazily decoded BER-TLV tree
+ *
+ * The root node returned by parse() represents the whole response; its
+ * children (the top level data objects) are indexed eagerly. Children of
+ * constructed data objects (eg. 6F, A5, BF0C, 70, 77) are only decoded the
+ * first time they are accessed, and all nodes share the original buffer.
+ *
+ * Paths are hex tag ids separated by '/', eg. "6F/A5/BF0C/61/4F".
+ *
+ * Tags are looked up in the TagProvider given to parse(), eg. the app's
+ * EMVApp.getTagResolver(), which is shared by all nodes of the tree.
+ */
+public final class TLVNode {
+
+    private static final List<TLVNode> NO_CHILDREN = Collections.emptyList();
+
+    private final byte[] mBuf;
+    private final int mTagOffset;
+    private final int mTagLength;
+    private final int mLengthOffset;
+    private final int mLengthLength;
+    private final int mValueOffset;
+    private final int mValueLength;
+    private final int mTagId;
+    private final TagProvider mTagProvider;
+
+    private Tag mTag;
+    private List<TLVNode> mChildren;
+
+    // root node
+    private TLVNode(byte[] buf, int offset, int length, TagProvider tagProvider) {
+        mBuf = buf;
+        mTagOffset = offset;
+        mTagLength = 0;
+        mLengthOffset = offset;
+        mLengthLength = 0;
+        mValueOffset = offset;
+        mValueLength = length;
+        mTagId = -1;
+        mTagProvider = tagProvider;
+    }
+
+    private TLVNode(TLVCursor cursor, TagProvider tagProvider) {
+        mBuf = cursor.getBuffer();
+        mTagOffset = cursor.getTagOffset();
+        mTagLength = cursor.getTagLength();
+        mLengthOffset = cursor.getLengthOffset();
+        mLengthLength = cursor.getLengthLength();
+        mValueOffset = cursor.getValueOffset();
+        mValueLength = cursor.getValueLength();
+        mTagId = (mTagLength <= 4) ? cursor.getTagId() : -1;
+        mTagProvider = tagProvider;
+    }
+
+    public static TLVNode parse(byte[] data) {
+        return parse(data, 0, data.length, TLVUtil.getDefaultTagProvider());
+    }
+
+    public static TLVNode parse(byte[] data, TagProvider tagProvider) {
+        return parse(data, 0, data.length, tagProvider);
+    }
+
+    public static TLVNode parse(byte[] data, int offset, int length) {
+        return parse(data, offset, length, TLVUtil.getDefaultTagProvider());
+    }
+
+    public static TLVNode parse(byte[] data, int offset, int length, TagProvider tagProvider) {
+        if (tagProvider == null) {
+            throw new IllegalArgumentException("Param tagProvider cannot be null");
+        }
+        TLVNode root = new TLVNode(data, offset, length, tagProvider);
+        root.getChildren();
+        return root;
+    }
+
+    public boolean isRoot() {
+        return mTagLength == 0;
+    }
+
+    public boolean isConstructed() {
+        return isRoot() || (mBuf[mTagOffset] & 0x20) != 0;
+    }
+
+    /**
+     * Tag id bytes packed big-endian into an int, or -1 for the root node
+     */
+    public int getTagId() {
+        return mTagId;
+    }
+
+    /**
+     * Returns null for the root node
+     */
+    public Tag getTag() {
+        if (mTag == null && !isRoot()) {
+            mTag = mTagProvider.getNotNull(mBuf, mTagOffset, mTagLength);
+        }
+        return mTag;
+    }
+
+    public TagProvider getTagProvider() {
+        return mTagProvider;
+    }
+
+    public byte[] getBuffer() {
+        return mBuf;
+    }
+
+    public int getTagOffset() {
+        return mTagOffset;
+    }
+
+    public int getTagLength() {
+        return mTagLength;
+    }
+
+    public int getLengthOffset() {
+        return mLengthOffset;
+    }
+
+    public int getLengthLength() {
+        return mLengthLength;
+    }
+
+    public int getValueOffset() {
+        return mValueOffset;
+    }
+
+    public int getValueLength() {
+        return mValueLength;
+    }
+
+    public byte[] getValueBytes() {
+        return Arrays.copyOfRange(mBuf, mValueOffset, mValueOffset + mValueLength);
+    }
+
+    /**
+     * Returns a lightweight BERTLV view backed by the original buffer
+     */
+    public BERTLV toBERTLV() {
+        if (isRoot()) {
+            throw new IllegalStateException("Root node has no tag");
+        }
+        return new BERTLV(getTag(), mBuf, mLengthOffset, mLengthLength, mValueOffset, mValueLength);
+    }
+
+    /**
+     * Decodes the children on first access; primitive data objects have none
+     */
+    public List<TLVNode> getChildren() {
+        if (mChildren == null) {
+            if (!isConstructed()) {
+                mChildren = NO_CHILDREN;
+            } else {
+                List<TLVNode> children = new ArrayList<TLVNode>(4);
+                TLVCursor cursor = new TLVCursor(mBuf, mValueOffset, mValueLength, mTagProvider);
+                while (cursor.next()) {
+                    children.add(new TLVNode(cursor, mTagProvider));
+                }
+                mChildren = Collections.unmodifiableList(children);
+            }
+        }
+        return mChildren;
+    }
+
+    /**
+     * Returns the first direct child with the given tag id, or null
+     */
+    public TLVNode getChild(int tagId) {
+        for (TLVNode child : getChildren()) {
+            if (child.mTagId == tagId) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first node matching the path relative to this node, or null
+     */
+    public TLVNode find(String path) {
+        return find(parsePath(path), 0);
+    }
+
+    private TLVNode find(int[] tagIds, int depth) {
+        for (TLVNode child : getChildren()) {
+            if (child.mTagId == tagIds[depth]) {
+                if (depth == tagIds.length - 1) {
+                    return child;
+                }
+                TLVNode found = child.find(tagIds, depth + 1);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all nodes matching the path relative to this node, in order
+     */
+    public List<TLVNode> findAll(String path) {
+        List<TLVNode> found = new ArrayList<TLVNode>();
+        findAll(parsePath(path), 0, found);
+        return found;
+    }
+
+    private void findAll(int[] tagIds, int depth, List<TLVNode> found) {
+        for (TLVNode child : getChildren()) {
+            if (child.mTagId == tagIds[depth]) {
+                if (depth == tagIds.length - 1) {
+                    found.add(child);
+                } else {
+                    child.findAll(tagIds, depth + 1, found);
+                }
+            }
+        }
+    }
+
+    private static int[] parsePath(String path) {
+        String[] ids = path.split("/");
+        int[] tagIds = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            try {
+                tagIds[i] = (int) Long.parseLong(ids[i].trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid tag id '" + ids[i] + "' in path: " + path, e);
+            }
+        }
+        return tagIds;
+    }
+
+    @Override
+    public String toString() {
+        return isRoot() ? "TLVNode[root]" : toBERTLV().toString();
+    }
+}
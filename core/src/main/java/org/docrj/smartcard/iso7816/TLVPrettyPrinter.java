@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.io.IOException;
+
+import org.docrj.smartcard.emv.TagProvider;
+import org.docrj.smartcard.util.Util;
+
+/**
+ * Formats BER-TLV data for display in the console
+ *
+ * Output is appended to a caller supplied StringBuilder (or Appendable);
+ * hex digits and indentation are written by the Util hex codec, straight
+ * from lookup tables instead of going through intermediate strings.
+ *
+ * Instances hold no mutable state, so a single instance may be used from
+ * several threads at once (eg. a reader thread and a background exporter).
+ * Tag names come from the TagProvider the tree was parsed with.
+ */
+public final class TLVPrettyPrinter {
+
+    // extra indents 3 and 7 (below) work well with courier new (fixed width),
+    // but for some reason not with the monospace typeface (droid sans mono)
+    private static final int INDENT_CONSTRUCTED = 3;
+    private static final int INDENT_PRIMITIVE = 7;
+
+    // hex digits per line before wrapping long values
+    private static final int HEX_CHARS_PER_LINE = 32;
+
+    private static final TLVPrettyPrinter DEFAULT = new TLVPrettyPrinter();
+
+    public static TLVPrettyPrinter getDefault() {
+        return DEFAULT;
+    }
+
+    public String print(TLVNode root) {
+        StringBuilder out = new StringBuilder(root.getValueLength() * 8);
+        print(root, 0, out);
+        return out.toString();
+    }
+
+    public void print(TLVNode root, Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            print(root, 0, (StringBuilder) out);
+        } else {
+            StringBuilder buf = new StringBuilder(root.getValueLength() * 8);
+            print(root, 0, buf);
+            out.append(buf);
+        }
+    }
+
+    /**
+     * Appends the children of root, each starting at the given indent
+     */
+    public void print(TLVNode root, int indentLength, StringBuilder out) {
+        appendChildren(root, indentLength, out, false);
+    }
+
+    /**
+     * Decodes all that print() would, without printing it; since a TLVNode
+     * decodes its children only when asked, this is how to find out up
+     * front whether a tree can be printed
+     *
+     * @throws TLVException if a nested data object or a DOL is malformed
+     */
+    public void check(TLVNode root) {
+        for (TLVNode node : root.getChildren()) {
+            Tag tag = node.getTag();
+            if (tag.isConstructed()) {
+                check(node);
+            } else if (tag.getTagValueType() == TagValueType.DOL) {
+                byte[] data = node.getBuffer();
+                int pos = node.getValueOffset();
+                int end = pos + node.getValueLength();
+                int[] decoded = new int[1];
+                while (pos < end) {
+                    int tagLength = TLVCursor.readTagIdLength(data, pos, end);
+                    pos = TLVUtil.readTagLength(data, pos + tagLength, end, decoded);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a list of tags and lengths (eg. a DOL), one per line, without
+     * a trailing newline
+     */
+    public void printTagAndLengthList(byte[] data, int offset, int length,
+            int indentLength, StringBuilder out) {
+        printTagAndLengthList(data, offset, length, indentLength,
+                TLVUtil.getDefaultTagProvider(), out);
+    }
+
+    public void printTagAndLengthList(byte[] data, int offset, int length,
+            int indentLength, TagProvider tagProvider, StringBuilder out) {
+        int end = offset + length;
+        int pos = offset;
+        int[] decoded = new int[1];
+
+        boolean firstLine = true;
+        while (pos < end) {
+            if (firstLine) {
+                firstLine = false;
+            } else {
+                out.append('\n');
+            }
+            Util.appendSpaces(out, indentLength);
+
+            int tagLength = TLVCursor.readTagIdLength(data, pos, end);
+            Tag tag = tagProvider.getNotNull(data, pos, tagLength);
+            pos = TLVUtil.readTagLength(data, pos + tagLength, end, decoded);
+
+            Util.appendHex(out, tag.getTagBytes(), 0, tag.getTagBytes().length);
+            out.append(' ');
+            appendMinimalHex(out, decoded[0]);
+            out.append(": ");
+            out.append(tag.getName());
+        }
+    }
+
+    /**
+     * @param recursed true if the caller just printed the header of
+     *        a constructed data object whose children these are
+     * @return true if the next sibling should be preceded by a blank line
+     */
+    private boolean appendChildren(TLVNode parent, int indentLength,
+            StringBuilder out, boolean recursed) {
+        byte[] data = parent.getBuffer();
+        boolean first = true;
+
+        for (TLVNode node : parent.getChildren()) {
+            if (recursed) {
+                out.append("\n\n");
+            } else if (!first) {
+                out.append('\n');
+            }
+            recursed = false;
+            first = false;
+            Util.appendSpaces(out, indentLength);
+
+            Tag tag = node.getTag();
+            int valueOffset = node.getValueOffset();
+            int valueLength = node.getValueLength();
+
+            Util.appendHex(out, data, node.getTagOffset(), node.getTagLength());
+            out.append(' ');
+            Util.appendHex(out, data, node.getLengthOffset(), node.getLengthLength());
+            out.append(": ");
+            out.append(tag.getName());
+            out.append('\n');
+
+            if (tag.isConstructed()) {
+                recursed = appendChildren(node, indentLength + INDENT_CONSTRUCTED, out, true);
+            } else {
+                int valueIndent = indentLength + INDENT_PRIMITIVE;
+                if (tag.getTagValueType() == TagValueType.DOL) {
+                    printTagAndLengthList(data, valueOffset, valueLength, valueIndent,
+                            node.getTagProvider(), out);
+                } else {
+                    Util.appendSpaces(out, valueIndent);
+                    Util.appendWrappedHex(out, data, valueOffset, valueLength, HEX_CHARS_PER_LINE,
+                            valueIndent);
+                    if (tag.getTagValueType() == TagValueType.TEXT) {
+                        out.append('\n');
+                        Util.appendSpaces(out, valueIndent);
+                        out.append('(');
+                        out.append(new String(data, valueOffset, valueLength));
+                        out.append(')');
+                    } else if (tag.getTagValueType() == TagValueType.MIXED) {
+                        out.append('\n');
+                        Util.appendSpaces(out, valueIndent);
+                        out.append('(');
+                        Util.appendSafePrintChars(out, data, valueOffset, valueLength);
+                        out.append(')');
+                    }
+                    out.append('\n');
+                }
+            }
+        }
+        return recursed;
+    }
+
+    // same bytes as Util.intToByteArray(value), without the allocations
+    private static void appendMinimalHex(StringBuilder out, int value) {
+        boolean found = false;
+        for (int shift = 24; shift > 0; shift -= 8) {
+            byte b = (byte) (value >>> shift);
+            if (found || b > 0x00) {
+                Util.appendHexByte(out, b);
+                found = true;
+            }
+        }
+        Util.appendHexByte(out, value);
+    }
+}
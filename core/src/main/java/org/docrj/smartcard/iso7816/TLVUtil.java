@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Ryan Jones
+ * Copyright 2010 sasc
+ * 
+ * This file was modified from the original source:
+ * https://code.google.com/p/javaemvreader/
+ * 
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.iso7816;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.docrj.smartcard.emv.EMVTags;
+import org.docrj.smartcard.emv.TagProvider;
+
+@SuppressWarnings("unused")
+public class TLVUtil {
+    private static final String TAG = "smartcard-reader";
+
+    // tag ids longer than 4 bytes don't fit in an int
+    public static final int INVALID_TAG_ID = -1;
+
+    /**
+     * Tags used when parsing outside of any application; an app's own tags
+     * come from EMVApp.getTagResolver()
+     */
+    static TagProvider getDefaultTagProvider() {
+        return EMVTags.getResolver();
+    }
+
+    /**
+     * Returns the tag id bytes packed big-endian into an int, eg. '9F38' =
+     * 0x9F38, or INVALID_TAG_ID if there are more than 4 bytes
+     */
+    public static int getTagId(byte[] buf, int offset, int length) {
+        if (length > 4) {
+            return INVALID_TAG_ID;
+        }
+        int tagId = 0;
+        for (int i = offset; i < offset + length; i++) {
+            tagId = (tagId << 8) | (buf[i] & 0xFF);
+        }
+        return tagId;
+    }
+
+    // this is just a list of Tag And Lengths (eg. DOLs)
+    public static String getFormattedTagAndLength(byte[] data, int indentLength) {
+        StringBuilder buf = new StringBuilder();
+        TLVPrettyPrinter.getDefault().printTagAndLengthList(data, 0, data.length, indentLength, buf);
+        return buf.toString();
+    }
+
+    /**
+     * Decodes the length field starting at offset
+     *
+     * @param decoded receives the decoded length at index 0
+     * @return the offset following the length field
+     */
+    static int readTagLength(byte[] data, int offset, int end, int[] decoded) {
+        if (offset >= end) {
+            throw new TLVException("EOS when reading length bytes");
+        }
+        int length = data[offset++] & 0xFF;
+        if (length > 128) {
+            // long length form
+            int numberOfLengthOctets = length & 127; // turn off 8th bit
+            length = 0;
+            for (int i = 0; i < numberOfLengthOctets; i++) {
+                if (offset >= end) {
+                    throw new TLVException("EOS when reading length bytes");
+                }
+                length <<= 8;
+                length |= data[offset++] & 0xFF;
+            }
+        }
+        decoded[0] = length;
+        return offset;
+    }
+
+    public static List<TagAndLength> parseTagAndLength(byte[] data) {
+        return parseTagAndLength(data, getDefaultTagProvider());
+    }
+
+    public static List<TagAndLength> parseTagAndLength(byte[] data, TagProvider tagProvider) {
+        List<TagAndLength> tagAndLengthList = new ArrayList<TagAndLength>();
+        int[] decoded = new int[1];
+        int pos = 0;
+
+        while (pos < data.length) {
+            if (data.length - pos < 2) {
+                throw new SmartcardException("Data length < 2 : " + (data.length - pos));
+            }
+            int tagLength = TLVCursor.readTagIdLength(data, pos, data.length);
+            Tag tag = tagProvider.getNotNull(data, pos, tagLength);
+            pos = readTagLength(data, pos + tagLength, data.length, decoded);
+
+            tagAndLengthList.add(new TagAndLength(tag, decoded[0]));
+        }
+        return tagAndLengthList;
+    }
+
+    public static String prettyPrintAPDUResponse(byte[] data) {
+        return prettyPrintAPDUResponse(data, 0);
+    }
+
+    public static String prettyPrintAPDUResponse(byte[] data, int startPos, int length) {
+        return TLVPrettyPrinter.getDefault().print(TLVNode.parse(data, startPos, length));
+    }
+
+    public static String prettyPrintAPDUResponse(TLVNode root) {
+        return TLVPrettyPrinter.getDefault().print(root);
+    }
+
+    public static String prettyPrintAPDUResponse(byte[] data, int indentLength) {
+        StringBuilder buf = new StringBuilder();
+        TLVPrettyPrinter.getDefault().print(TLVNode.parse(data), indentLength, buf);
+        return buf.toString();
+    }
+}
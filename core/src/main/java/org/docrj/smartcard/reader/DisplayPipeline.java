@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the parsing and display of card responses on a worker thread, in
+ * the order they were posted, so that the xcvr thread only has to exchange
+ * APDUs with the card and the card spends less time in the field
+ *
+ * If a task throws, the tasks after it are skipped and the exception is
+ * rethrown on the xcvr thread by the next post() or rethrowFailure().
+ */
+class DisplayPipeline {
+
+    private final ExecutorService mExecutor;
+    private volatile RuntimeException mFailure;
+
+    DisplayPipeline() {
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "display-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    void post(final Runnable task) {
+        rethrowFailure();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mFailure != null) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    mFailure = e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the posted tasks to finish and stops the worker thread;
+     * call before displaying anything else from the xcvr thread
+     */
+    void finish() {
+        mExecutor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                // output must not be left behind, keep waiting
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void rethrowFailure() {
+        RuntimeException failure = mFailure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
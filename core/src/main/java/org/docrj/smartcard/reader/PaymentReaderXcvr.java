@@ -19,13 +19,17 @@
 
 package org.docrj.smartcard.reader;
 
+import org.docrj.smartcard.util.Log;
 import org.docrj.smartcard.util.Util;
 import org.docrj.smartcard.emv.GpoApdu;
+import org.docrj.smartcard.iso7816.ApduParser;
+import org.docrj.smartcard.iso7816.CardLostException;
+import org.docrj.smartcard.iso7816.CardTransport;
 import org.docrj.smartcard.iso7816.CommandApdu;
 import org.docrj.smartcard.iso7816.ReadRecordApdu;
 import org.docrj.smartcard.iso7816.ResponseApdu;
 import org.docrj.smartcard.iso7816.SelectApdu;
-import org.docrj.smartcard.iso7816.TLVUtil;
+import org.docrj.smartcard.iso7816.TLVNode;
 import org.docrj.smartcard.iso7816.TLVException;
 
 import org.docrj.smartcard.emv.AppPriorityIndicator;
@@ -43,16 +47,13 @@ import org.docrj.smartcard.emv.DOL;
 //import org.docrj.smartcard.emv.EMVApp;
 import org.docrj.smartcard.emv.IssuerIdNumber;
 import org.docrj.smartcard.emv.LogEntry;
+import org.docrj.smartcard.emv.TagProvider;
 import org.docrj.smartcard.emv.VISATags;
 import org.docrj.smartcard.iso7816.SmartcardException;
 import org.docrj.smartcard.iso7816.Tag;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-
-import android.nfc.TagLostException;
-import android.nfc.tech.IsoDep;
-import android.util.Log;
+import java.util.List;
 
 public class PaymentReaderXcvr extends ReaderXcvr {
 
@@ -62,39 +63,47 @@ public class PaymentReaderXcvr extends ReaderXcvr {
     private static final String EMV_PPSE_AID = "325041592E5359532E4444463031";
     private final byte[] mPpseAidBytes;
 
-    private int mTestMode;    
+    private boolean mAppSelect;
     private DDF mPpseDdf;
 
-    public PaymentReaderXcvr(IsoDep isoDep, String aid, UiCallbacks onMessage, int testMode) {
-        super(isoDep, aid, onMessage);
+    /**
+     * @param appSelect true to select aid only (app select), false to read
+     *     each app listed in the ppse (emv read)
+     */
+    public PaymentReaderXcvr(CardTransport transport, String aid, UiCallbacks onMessage,
+            Messages messages, boolean appSelect) {
+        super(transport, aid, onMessage, messages);
         mPpseAidBytes = Util.hexToBytes(EMV_PPSE_AID);
-        mTestMode = testMode;
+        mAppSelect = appSelect;
     }
 
     @Override
     public void run() {
         try {
-            mIsoDep.connect();
-
-            // select ppse
-            if (selectPpse()) {
-                if (mTestMode == Launcher.TEST_MODE_APP_SELECT) {
-                    selectApp(mAid);
-                } else if (mPpseDdf != null) {
-                    // process each app found in ppse select response
-                    for (EMVApp app : mPpseDdf.getEMVApps()) {
-                        if (selectApp(app)) {
-                            if (initiateAppProcessing(app)) {
-                                readAppData(app);
+            try {
+                mTransport.connect();
+
+                // select ppse
+                if (selectPpse()) {
+                    if (mAppSelect) {
+                        selectApp(mAid);
+                    } else if (mPpseDdf != null) {
+                        // process each app found in ppse select response
+                        for (EMVApp app : mPpseDdf.getEMVApps()) {
+                            if (selectApp(app)) {
+                                if (initiateAppProcessing(app)) {
+                                    readAppData(app);
+                                }
                             }
                         }
                     }
                 }
+                mTransport.close();
+            } finally {
+                finishChecks();
             }
-            mIsoDep.close();
-        } catch (TagLostException e) {
-            mUiCallbacks
-                    .onError(mContext.getString(R.string.tag_lost_err));
+        } catch (CardLostException e) {
+            mUiCallbacks.onError(mMessages.getString(Messages.TAG_LOST_ERR));
         } catch (IOException e) {
             mUiCallbacks.onError(e.getMessage());
         } catch (TLVException e) {
@@ -102,24 +111,24 @@ public class PaymentReaderXcvr extends ReaderXcvr {
         }
     }
 
-    private boolean selectPpse() throws TagLostException, IOException {
+    private boolean selectPpse() throws IOException {
         Log.d(TAG, "select PPSE");
         CommandApdu selectPpseApdu = new SelectApdu(mPpseAidBytes);
         selectPpseApdu.setCommandName("select ppse");
         ResponseApdu rspApdu = sendAndRcv(selectPpseApdu, true);
 
         if (rspApdu.isStatus(SW_NO_ERROR)) {
-            mUiCallbacks.onOkay(mContext.getString(R.string.select_ppse_ok,
+            mUiCallbacks.onOkay(mMessages.getString(Messages.SELECT_PPSE_OK,
                     rspApdu.getSW1SW2()));
         } else {
             mUiCallbacks.onError(
-                    mContext.getString(R.string.select_ppse_err,
+                    mMessages.getString(Messages.SELECT_PPSE_ERR,
                             rspApdu.getSW1SW2(),
                             ApduParser.parse(false, rspApdu.toBytes())));
             return false;
         }
         try {
-            mPpseDdf = parseFCIDDF(rspApdu.getData());
+            mPpseDdf = parseFCIDDF(rspApdu.getDataTree());
         } catch (TLVException e) {
             mPpseDdf = null;
             mUiCallbacks.onError(e.getMessage());
@@ -136,27 +145,32 @@ public class PaymentReaderXcvr extends ReaderXcvr {
         return selectApp(aid, null);
     }
 
-    private boolean selectApp(String aid, EMVApp app) throws TagLostException, IOException {
+    private boolean selectApp(String aid, EMVApp app) throws IOException {
         Log.d(TAG, "select app: " + aid);
         byte[] aidBytes = Util.hexToBytes(aid);
+        // the iin isn't known until the select response is parsed, so this
+        // only takes the rid into account for now
+        mTagProvider = (app != null) ? app.getTagResolver() : EMVTags.getResolver(aidBytes, null);
         ResponseApdu rspApdu = sendAndRcv(new SelectApdu(aidBytes), true);
         
         if (rspApdu.isStatus(SW_NO_ERROR)) {
-            mUiCallbacks.onOkay(mContext.getString(R.string.select_app_ok,
+            mUiCallbacks.onOkay(mMessages.getString(Messages.SELECT_APP_OK,
                     rspApdu.getSW1SW2()));
             if (app != null) {
                 try {
-                    parseFCIADF(rspApdu.getData(), app);
+                    parseFCIADF(rspApdu.getDataTree(mTagProvider), app);
                 } catch (Exception e) {
                     mUiCallbacks.onError(e.getMessage());
                 }
+                // pick up the issuer's tags, if any
+                mTagProvider = app.getTagResolver();
             }
         } else {
             if (rspApdu.getSW1SW2() == SW_SELECTED_FILE_INVALIDATED) {
                 Log.d(TAG, "Application blocked!");
             }
             mUiCallbacks.onError(
-                    mContext.getString(R.string.select_app_err,
+                    mMessages.getString(Messages.SELECT_APP_ERR,
                             rspApdu.getSW1SW2(),
                             ApduParser.parse(false, rspApdu.toBytes())));
             return false;
@@ -169,10 +183,10 @@ public class PaymentReaderXcvr extends ReaderXcvr {
         ResponseApdu rspApdu = sendAndRcv(GpoApdu.getGpoApdu(app.getPdol(), app), false);
 
         if (rspApdu.isStatus(SW_NO_ERROR)) {
-            mUiCallbacks.onOkay(mContext.getString(R.string.gpo_ok, rspApdu.getSW1SW2()));
+            mUiCallbacks.onOkay(mMessages.getString(Messages.GPO_OK, rspApdu.getSW1SW2()));
             try {
                 // format of the response message is given in EMV 4.2 book 3, section 6.5.8. 
-                parseProcessingOpts(rspApdu.getData(), app);
+                parseProcessingOpts(rspApdu.getDataTree(mTagProvider), app);
             } catch (Exception e) {
                 mUiCallbacks.onError(e.getMessage());
             }
@@ -180,104 +194,143 @@ public class PaymentReaderXcvr extends ReaderXcvr {
             if (app.getAppInterchangeProfile() == null || app.getAppFileLocator() == null) {
                 //throw new SmartcardException("GPO response did not contain AIP and AFL");
                 Log.d(TAG, "GPO response did not contain AIP and AFL");
-                mUiCallbacks.onError(mContext.getString(R.string.gpo_aip_afl_err));
+                mUiCallbacks.onError(mMessages.getString(Messages.GPO_AIP_AFL_ERR));
                 return false;
             }
         } else {
-            mUiCallbacks.onError(mContext.getString(R.string.gpo_err, rspApdu.getSW1SW2()));
+            mUiCallbacks.onError(mMessages.getString(Messages.GPO_ERR, rspApdu.getSW1SW2()));
                             //ApduParser.parse(false, rspApdu.toBytes())));
             return false;
         }
         return true;
     }
 
+    // the card is only held for the read record exchanges: each response is
+    // parsed and displayed on a DisplayPipeline worker while the next read
+    // record command is in flight
     private boolean readAppData(EMVApp app) throws IOException {
-        for (AppElementaryFile aef : app.getAppFileLocator().getApplicationElementaryFiles()) {
-            int sfi = aef.getSfi();
-            int start = aef.getStartRecordNum();
-            int end = aef.getEndRecordNum();
-
-            for (int record = start; record <= end; record++) {
-                Log.d(TAG, "Read record, sfi: " + sfi + " , record: " + record);
-                ResponseApdu rspApdu = sendAndRcv(new ReadRecordApdu(record, sfi), true);
-
-                if (rspApdu.isStatus(SW_NO_ERROR)) {
-                    mUiCallbacks.onOkay(mContext.getString(R.string.read_rec_ok,
-                        sfi, record, rspApdu.getSW1SW2()));
-                    //parseAppRecord(rspApdu.getData(), app);
-                    //boolean isInvolvedInOfflineDataAuth =
-                    //    (recordNum - startRecord + 1) <= aef.getNumRecordsInvolvedInOfflineDataAuth();
-                    //Record record = new Record(rspApdu.getData(), recordNum, isInvolvedInOfflineDataAuth);
-                    //aef.setRecord(recordNum, record);
-                } else {
+        final TagProvider tagProvider = mTagProvider;
+        DisplayPipeline pipeline = new DisplayPipeline();
+        boolean ok = true;
+        try {
+            for (AppElementaryFile aef : app.getAppFileLocator().getApplicationElementaryFiles()) {
+                final int sfi = aef.getSfi();
+                int start = aef.getStartRecordNum();
+                int end = aef.getEndRecordNum();
+
+                for (int record = start; record <= end && ok; record++) {
+                    Log.d(TAG, "Read record, sfi: " + sfi + " , record: " + record);
+                    final ReadRecordApdu cmdApdu = new ReadRecordApdu(record, sfi);
+                    byte[] sentBytes = buildCmdApdu(cmdApdu);
+                    ResponseApdu rcvdApdu = new ResponseApdu(mTransport.transceive(sentBytes));
+                    if (isExtendedRejected(cmdApdu, sentBytes, rcvdApdu)) {
+                        // the rejected exchange stays on the console, as in
+                        // sendAndRcv()
+                        final byte[] rejectedBytes = sentBytes;
+                        final ResponseApdu rejectedApdu = rcvdApdu;
+                        pipeline.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                showSend(cmdApdu, rejectedBytes);
+                                if (showRcv(cmdApdu, rejectedApdu, true, tagProvider)) {
+                                    checkRcv(cmdApdu, rejectedApdu, tagProvider);
+                                }
+                            }
+                        });
+                        sentBytes = buildCmdApdu(cmdApdu);
+                        rcvdApdu = new ResponseApdu(mTransport.transceive(sentBytes));
+                    }
+                    final byte[] cmdBytes = sentBytes;
+                    final ResponseApdu rspApdu = rcvdApdu;
+                    final int recordNum = record;
                     // any SW1 SW2 other than '9000' passed to the application layer as a result
                     // of reading any record shall cause the transaction to be terminated [spec]
-                    mUiCallbacks.onError(
-                            mContext.getString(R.string.read_rec_err,
-                                    sfi, record,
-                                    rspApdu.getSW1SW2(),
-                                    ApduParser.parse(false, rspApdu.toBytes())));
-                    return false;
+                    ok = rspApdu.isStatus(SW_NO_ERROR);
+
+                    pipeline.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            showSend(cmdApdu, cmdBytes);
+                            if (showRcv(cmdApdu, rspApdu, true, tagProvider)) {
+                                checkRcv(cmdApdu, rspApdu, tagProvider);
+                            }
+                            if (rspApdu.isStatus(SW_NO_ERROR)) {
+                                mUiCallbacks.onOkay(mMessages.getString(Messages.READ_REC_OK,
+                                    sfi, recordNum, rspApdu.getSW1SW2()));
+                                //parseAppRecord(rspApdu.getData(), app);
+                                //boolean isInvolvedInOfflineDataAuth =
+                                //    (recordNum - startRecord + 1) <= aef.getNumRecordsInvolvedInOfflineDataAuth();
+                                //Record record = new Record(rspApdu.getData(), recordNum, isInvolvedInOfflineDataAuth);
+                                //aef.setRecord(recordNum, record);
+                            } else {
+                                mUiCallbacks.onError(
+                                        mMessages.getString(Messages.READ_REC_ERR,
+                                                sfi, recordNum,
+                                                rspApdu.getSW1SW2(),
+                                                ApduParser.parse(false, rspApdu.toBytes())));
+                            }
+                        }
+                    });
+                }
+                if (!ok) {
+                    break;
                 }
             }
+        } finally {
+            // wait for the output, even if the tag was lost, so it shows
+            // ahead of any error reported by run()
+            pipeline.finish();
         }
-        return true;
+        pipeline.rethrowFailure();
+        return ok;
     }
 
-    private static DDF parseFCIDDF(byte[] data) {
+    private static DDF parseFCIDDF(TLVNode root) {
         DDF ddf = new DDF();
-        BERTLV tlv = TLVUtil.getNextTLV(new ByteArrayInputStream(data));
-
-        if (tlv.getTag().equals(EMVTags.FCI_TEMPLATE)) {
-            ByteArrayInputStream templateStream = tlv.getValueStream();
-
-            while (templateStream.available() >= 2) {
-                tlv = TLVUtil.getNextTLV(templateStream);
-                if (tlv.getTag().equals(EMVTags.DEDICATED_FILE_NAME)) {
-                    ddf.setName(tlv.getValueBytes());
-                } else if (tlv.getTag().equals(EMVTags.FCI_PROPRIETARY_TEMPLATE)) {
-                    ByteArrayInputStream bis2 = new ByteArrayInputStream(tlv.getValueBytes());
-                    int totalLen = bis2.available();
-                    int templateLen = tlv.getLength();
-                    while (bis2.available() > (totalLen - templateLen)) {
-                        tlv = TLVUtil.getNextTLV(bis2);
-
-                        if (tlv.getTag().equals(EMVTags.SFI)) {
-                            int sfi = Util.byteArrayToInt(tlv.getValueBytes());
+        List<TLVNode> nodes = root.getChildren();
+
+        if (!nodes.isEmpty() && nodes.get(0).getTag().equals(EMVTags.FCI_TEMPLATE)) {
+            TLVNode template = nodes.get(0);
+            for (TLVNode node : template.getChildren()) {
+                Tag tag = node.getTag();
+                if (tag.equals(EMVTags.DEDICATED_FILE_NAME)) {
+                    ddf.setName(node.getValueBytes());
+                } else if (tag.equals(EMVTags.FCI_PROPRIETARY_TEMPLATE)) {
+                    for (TLVNode propNode : node.getChildren()) {
+                        tag = propNode.getTag();
+
+                        if (tag.equals(EMVTags.SFI)) {
+                            int sfi = Util.byteArrayToInt(propNode.getBuffer(),
+                                    propNode.getValueOffset(), propNode.getValueLength());
                             ddf.setSFI(sfi);
-                        } else if (tlv.getTag().equals(EMVTags.LANGUAGE_PREFERENCE)) {
-                            LanguagePref languagePreference = new LanguagePref(tlv.getValueBytes());
+                        } else if (tag.equals(EMVTags.LANGUAGE_PREFERENCE)) {
+                            LanguagePref languagePreference = new LanguagePref(propNode.getValueBytes());
                             ddf.setLanguagePreference(languagePreference);
-                        } else if (tlv.getTag().equals(EMVTags.ISSUER_CODE_TABLE_INDEX)) {
-                            int index = Util.byteArrayToInt(tlv.getValueBytes());
+                        } else if (tag.equals(EMVTags.ISSUER_CODE_TABLE_INDEX)) {
+                            int index = Util.byteArrayToInt(propNode.getBuffer(),
+                                    propNode.getValueOffset(), propNode.getValueLength());
                             ddf.setIssuerCodeTableIndex(index);
-                        } else if (tlv.getTag().equals(EMVTags.APPLICATION_LABEL)) {
+                        } else if (tag.equals(EMVTags.APPLICATION_LABEL)) {
                             // TODO: is this tag expected at this point?
                             // should be in app_template! any info in book 1?
                             //String label = Util.getSafePrintChars(tlv.getValueBytes());
                             //ddf.setApplicationLabel(label);
-                        } else if (tlv.getTag().equals(EMVTags.FCI_ISSUER_DISCRETIONARY_DATA)) { //PPSE
-                            ByteArrayInputStream discrStream = new ByteArrayInputStream(tlv.getValueBytes());
-                            int total3Len = discrStream.available();
-                            int template3Len = tlv.getLength();
-                            while (discrStream.available() > (total3Len - template3Len)) {
-                                tlv = TLVUtil.getNextTLV(discrStream);
-
-                                if (tlv.getTag().equals(EMVTags.APPLICATION_TEMPLATE)) {
-                                    ByteArrayInputStream appTemplateStream = new ByteArrayInputStream(tlv.getValueBytes());
-                                    int appTemplateTotalLen = appTemplateStream.available();
-                                    int template4Len = tlv.getLength();
-
+                        } else if (tag.equals(EMVTags.FCI_ISSUER_DISCRETIONARY_DATA)) { //PPSE
+                            for (TLVNode discrNode : propNode.getChildren()) {
+                                if (discrNode.getTag().equals(EMVTags.APPLICATION_TEMPLATE)) {
                                     EMVApp app = new EMVApp();
-                                    while (appTemplateStream.available() > (appTemplateTotalLen - template4Len)) {
-                                        tlv = TLVUtil.getNextTLV(appTemplateStream);
-
-                                        if (tlv.getTag().equals(EMVTags.AID_CARD)) {
-                                            app.setAid(Util.bytesToHex(tlv.getValueBytes()));
-                                        } else if (tlv.getTag().equals(EMVTags.APPLICATION_LABEL)) {
-                                            app.setName(Util.getSafePrintChars(tlv.getValueBytes()));
-                                        } else if (tlv.getTag().equals(EMVTags.APPLICATION_PRIORITY_INDICATOR)) {
-                                            app.setApi(new AppPriorityIndicator(tlv.getValueBytes()[0]));
+                                    for (TLVNode appNode : discrNode.getChildren()) {
+                                        tag = appNode.getTag();
+                                        byte[] buf = appNode.getBuffer();
+                                        int offset = appNode.getValueOffset();
+                                        int length = appNode.getValueLength();
+
+                                        if (tag.equals(EMVTags.AID_CARD)) {
+                                            app.setAid(Util.bytesToHex(appNode.getValueBytes()));
+                                        } else if (tag.equals(EMVTags.APPLICATION_LABEL)) {
+                                            app.setName(Util.getSafePrintChars(buf, offset, length));
+                                        } else if (tag.equals(EMVTags.APPLICATION_PRIORITY_INDICATOR)) {
+                                            app.setApi(new AppPriorityIndicator(appNode.getValueBytes()[0]));
                                         } else {
                                             //TODO call ddf instead of card?
                                             //card.addUnhandledRecord(tlv);
@@ -313,68 +366,70 @@ public class PaymentReaderXcvr extends ReaderXcvr {
         return ddf;
     }
 
-    private static void parseFCIADF(byte[] data, EMVApp app) {
-        if (data == null || data.length < 2) {
+    private static void parseFCIADF(TLVNode root, EMVApp app) {
+        List<TLVNode> nodes = root.getChildren();
+        if (nodes.isEmpty()) {
             return;
         }
 
-        BERTLV tlv = TLVUtil.getNextTLV(new ByteArrayInputStream(data));
-
-        if (tlv.getTag().equals(EMVTags.FCI_TEMPLATE)) {
-            ByteArrayInputStream templateStream = tlv.getValueStream();
-            while (templateStream.available() >= 2) {
-
-                tlv = TLVUtil.getNextTLV(templateStream);
-                if (tlv.getTag().equals(EMVTags.DEDICATED_FILE_NAME)) {
-                    app.setAid(Util.bytesToHex(tlv.getValueBytes()));
-                } else if (tlv.getTag().equals(EMVTags.FCI_PROPRIETARY_TEMPLATE)) { //Proprietary Information Template
-                    ByteArrayInputStream bis2 = tlv.getValueStream();
-                    int totalLen = bis2.available();
-                    int templateLen = tlv.getLength();
-                    while (bis2.available() > (totalLen - templateLen)) {
-                        tlv = TLVUtil.getNextTLV(bis2);
-
-                        if (tlv.getTag().equals(EMVTags.APPLICATION_LABEL)) {
-                            app.setName(Util.getSafePrintChars(tlv.getValueBytes()));
-                        } else if (tlv.getTag().equals(EMVTags.PDOL)) {
-                            app.setPdol(new DOL(DOL.Type.PDOL, tlv.getValueBytes()));
-                        } else if (tlv.getTag().equals(EMVTags.LANGUAGE_PREFERENCE)) {
-                            LanguagePref languagePreference = new LanguagePref(tlv.getValueBytes());
+        TLVNode template = nodes.get(0);
+        if (template.getTag().equals(EMVTags.FCI_TEMPLATE)) {
+            for (TLVNode node : template.getChildren()) {
+
+                Tag tag = node.getTag();
+                if (tag.equals(EMVTags.DEDICATED_FILE_NAME)) {
+                    app.setAid(Util.bytesToHex(node.getValueBytes()));
+                } else if (tag.equals(EMVTags.FCI_PROPRIETARY_TEMPLATE)) { //Proprietary Information Template
+                    for (TLVNode propNode : node.getChildren()) {
+                        tag = propNode.getTag();
+                        byte[] buf = propNode.getBuffer();
+                        int offset = propNode.getValueOffset();
+                        int length = propNode.getValueLength();
+
+                        if (tag.equals(EMVTags.APPLICATION_LABEL)) {
+                            app.setName(Util.getSafePrintChars(buf, offset, length));
+                        } else if (tag.equals(EMVTags.PDOL)) {
+                            app.setPdol(new DOL(DOL.Type.PDOL, propNode.getValueBytes(),
+                                    propNode.getTagProvider()));
+                        } else if (tag.equals(EMVTags.LANGUAGE_PREFERENCE)) {
+                            LanguagePref languagePreference = new LanguagePref(propNode.getValueBytes());
                             app.setLanguagePref(languagePreference);
-                        } else if (tlv.getTag().equals(EMVTags.APP_PREFERRED_NAME)) {
+                        } else if (tag.equals(EMVTags.APP_PREFERRED_NAME)) {
                             //TODO: "Use Issuer Code Table Index"
-                            String preferredName = Util.getSafePrintChars(tlv.getValueBytes()); //Use only safe print chars, just in case
+                            String preferredName = Util.getSafePrintChars(buf, offset, length); //Use only safe print chars, just in case
                             app.setPreferredName(preferredName);
-                        } else if (tlv.getTag().equals(EMVTags.ISSUER_CODE_TABLE_INDEX)) {
-                            int index = Util.byteArrayToInt(tlv.getValueBytes());
+                        } else if (tag.equals(EMVTags.ISSUER_CODE_TABLE_INDEX)) {
+                            int index = Util.byteArrayToInt(buf, offset, length);
                             app.setIssuerCodeTableIndex(index);
-                        } else if (tlv.getTag().equals(EMVTags.APPLICATION_PRIORITY_INDICATOR)) {
-                            AppPriorityIndicator api = new AppPriorityIndicator(tlv.getValueBytes()[0]);
+                        } else if (tag.equals(EMVTags.APPLICATION_PRIORITY_INDICATOR)) {
+                            AppPriorityIndicator api = new AppPriorityIndicator(propNode.getValueBytes()[0]);
                             app.setApi(api);
-                        } else if (tlv.getTag().equals(EMVTags.FCI_ISSUER_DISCRETIONARY_DATA)) { // File Control Information (FCI) Issuer Discretionary Data
-                            ByteArrayInputStream bis3 = tlv.getValueStream();
-                            int totalLenFCIDiscretionary = bis3.available();
-                            int tlvLen = tlv.getLength();
-                            while (bis3.available() > (totalLenFCIDiscretionary - tlvLen)) {
-                                tlv = TLVUtil.getNextTLV(bis3);
-                                if (tlv.getTag().equals(EMVTags.LOG_ENTRY)) {
-                                    app.setLogEntry(new LogEntry(tlv.getValueBytes()[0], tlv.getValueBytes()[1]));
-                                } else if (tlv.getTag().equals(VISATags.VISA_LOG_ENTRY)) {
+                        } else if (tag.equals(EMVTags.FCI_ISSUER_DISCRETIONARY_DATA)) { // File Control Information (FCI) Issuer Discretionary Data
+                            for (TLVNode discrNode : propNode.getChildren()) {
+                                tag = discrNode.getTag();
+                                buf = discrNode.getBuffer();
+                                offset = discrNode.getValueOffset();
+                                length = discrNode.getValueLength();
+
+                                if (tag.equals(EMVTags.LOG_ENTRY)) {
+                                    byte[] logEntry = discrNode.getValueBytes();
+                                    app.setLogEntry(new LogEntry(logEntry[0], logEntry[1]));
+                                } else if (tag.equals(VISATags.VISA_LOG_ENTRY)) {
                                     // TODO: add this to VISAApp
                                     //app.setVisaLogEntry(new LogEntry(tlv.getValueBytes()[0], tlv.getValueBytes()[1]));
-                                } else if (tlv.getTag().equals(EMVTags.ISSUER_URL)) {
-                                    app.setIssuerUrl(Util.getSafePrintChars(tlv.getValueBytes()));
-                                } else if (tlv.getTag().equals(EMVTags.ISSUER_IDENTIFICATION_NUMBER)) {
-                                    IssuerIdNumber iin = new IssuerIdNumber(tlv.getValueBytes());
+                                } else if (tag.equals(EMVTags.ISSUER_URL)) {
+                                    app.setIssuerUrl(Util.getSafePrintChars(buf, offset, length));
+                                } else if (tag.equals(EMVTags.ISSUER_IDENTIFICATION_NUMBER)) {
+                                    IssuerIdNumber iin = new IssuerIdNumber(discrNode.getValueBytes());
                                     app.setIssuerIdNumber(iin);
-                                } else if (tlv.getTag().equals(EMVTags.ISSUER_COUNTRY_CODE_ALPHA3)) {
-                                    app.setIssuerCCAlpha3(Util.getSafePrintChars(tlv.getValueBytes()));
+                                } else if (tag.equals(EMVTags.ISSUER_COUNTRY_CODE_ALPHA3)) {
+                                    app.setIssuerCCAlpha3(Util.getSafePrintChars(buf, offset, length));
                                 } else {
-                                    checkForProprietaryTagOrAddToUnhandled(app, tlv);
+                                    checkForProprietaryTagOrAddToUnhandled(app, discrNode.toBERTLV());
                                 }
                             }
                         } else {
-                            checkForProprietaryTagOrAddToUnhandled(app, tlv);
+                            checkForProprietaryTagOrAddToUnhandled(app, propNode.toBERTLV());
                         }
 
                     }
@@ -382,9 +437,9 @@ public class PaymentReaderXcvr extends ReaderXcvr {
             }
 
         } else {
-            checkForProprietaryTagOrAddToUnhandled(app, tlv);
+            checkForProprietaryTagOrAddToUnhandled(app, template.toBERTLV());
             throw new SmartcardException("Error parsing ADF, expected FCI template. data: " +
-                Util.byteArrayToHexString(data));
+                Util.byteArrayToHexString(template.getBuffer()));
         }
     }
 
@@ -397,42 +452,47 @@ public class PaymentReaderXcvr extends ReaderXcvr {
         }
     }
 
-    public static void parseProcessingOpts(byte[] data, EMVApp app) {
-        ByteArrayInputStream bis = new ByteArrayInputStream(data);
-
-        if (bis.available() < 2) {
+    public static void parseProcessingOpts(TLVNode root, EMVApp app) {
+        if (root.getValueLength() < 2) {
             throw new SmartcardException("Error parsing Processing Options. Invalid TLV Length. Data: " +
-                Util.byteArrayToHexString(data));
+                Util.byteArrayToHexString(root.getBuffer()));
         }
-        BERTLV tlv = TLVUtil.getNextTLV(bis);
-
-        ByteArrayInputStream valueBytesBis = tlv.getValueStream();
+        List<TLVNode> nodes = root.getChildren();
+        if (nodes.isEmpty()) {
+            throw new SmartcardException("Error parsing Processing Options. No TLV found. Data: " +
+                Util.byteArrayToHexString(root.getBuffer()));
+        }
+        TLVNode template = nodes.get(0);
+        byte[] buf = template.getBuffer();
+        int valueOffset = template.getValueOffset();
+        int valueLength = template.getValueLength();
 
-        if (valueBytesBis.available() < 2) {
+        if (valueLength < 2) {
             throw new SmartcardException("Error parsing Processing Options: Invalid ValueBytes length: " +
-                valueBytesBis.available());
+                valueLength);
         }
 
-        if (tlv.getTag().equals(EMVTags.RESPONSE_MESSAGE_TEMPLATE_1)) {
+        Tag tag = template.getTag();
+        if (tag.equals(EMVTags.RESPONSE_MESSAGE_TEMPLATE_1)) {
             // AIP and AFL concatenated without delimiters (that is, excluding tag and length)
-            AppInterchangeProfile aip = new AppInterchangeProfile((byte) valueBytesBis.read(), (byte) valueBytesBis.read());
+            AppInterchangeProfile aip = new AppInterchangeProfile(buf[valueOffset], buf[valueOffset + 1]);
             app.setAppInterchangeProfile(aip);
 
-            if (valueBytesBis.available() % 4 != 0) {
+            int aflLength = valueLength - 2;
+            if (aflLength % 4 != 0) {
                 throw new SmartcardException("Error parsing Processing Options: Invalid AFL length: " +
-                    valueBytesBis.available());
+                    aflLength);
             }
 
-            byte[] aflBytes = new byte[valueBytesBis.available()];
-            valueBytesBis.read(aflBytes, 0, aflBytes.length);
+            byte[] aflBytes = new byte[aflLength];
+            System.arraycopy(buf, valueOffset + 2, aflBytes, 0, aflLength);
 
             AppFileLocator afl = new AppFileLocator(aflBytes);
             app.setAppFileLocator(afl);
-        } else if (tlv.getTag().equals(EMVTags.RESPONSE_MESSAGE_TEMPLATE_2)) {
+        } else if (tag.equals(EMVTags.RESPONSE_MESSAGE_TEMPLATE_2)) {
             //AIP (and AFL) WITH delimiters (that is, including, including tag and length) and
             // possibly other BER TLV tags (that might be proprietary)
-            while (valueBytesBis.available() >= 2) {
-                tlv = TLVUtil.getNextTLV(valueBytesBis);
+            for (TLVNode node : template.getChildren()) {
                 
 //   Example:
 //                77 4e -- Response Message Template Format 2
@@ -454,20 +514,21 @@ public class PaymentReaderXcvr extends ReaderXcvr {
 //                    5f 20 0f -- Cardholder Name
 //                             56 49 53 41 20 43 41 52 44 48 4f 4c 44 45 52 (=VISA CARDHOLDER)
                 
-                if (tlv.getTag().equals(EMVTags.APPLICATION_INTERCHANGE_PROFILE)) {
-                    byte[] aipBytes = tlv.getValueBytes();
+                tag = node.getTag();
+                if (tag.equals(EMVTags.APPLICATION_INTERCHANGE_PROFILE)) {
+                    byte[] aipBytes = node.getValueBytes();
                     AppInterchangeProfile aip = new AppInterchangeProfile(aipBytes[0], aipBytes[1]);
                     app.setAppInterchangeProfile(aip);
-                } else if (tlv.getTag().equals(EMVTags.APPLICATION_FILE_LOCATOR)) {
-                    byte[] aflBytes = tlv.getValueBytes();
+                } else if (tag.equals(EMVTags.APPLICATION_FILE_LOCATOR)) {
+                    byte[] aflBytes = node.getValueBytes();
                     AppFileLocator afl = new AppFileLocator(aflBytes);
                     app.setAppFileLocator(afl);
                 } else {
-                    checkForProprietaryTagOrAddToUnhandled(app, tlv);
+                    checkForProprietaryTagOrAddToUnhandled(app, node.toBERTLV());
                 }
             }
         } else {
-            checkForProprietaryTagOrAddToUnhandled(app, tlv);
+            checkForProprietaryTagOrAddToUnhandled(app, template.toBERTLV());
         }
     }
     
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.reader;
+
+import java.io.IOException;
+
+import org.docrj.smartcard.emv.EMVTags;
+import org.docrj.smartcard.emv.TagProvider;
+import org.docrj.smartcard.iso7816.CardTransport;
+import org.docrj.smartcard.iso7816.CommandApdu;
+import org.docrj.smartcard.iso7816.ReadRecordApdu;
+import org.docrj.smartcard.iso7816.ResponseApdu;
+import org.docrj.smartcard.iso7816.SelectApdu;
+import org.docrj.smartcard.iso7816.TLVException;
+import org.docrj.smartcard.iso7816.TLVPrettyPrinter;
+import org.docrj.smartcard.util.Log;
+import org.docrj.smartcard.util.Util;
+
+/**
+ * Base of the xcvrs, which exchange APDUs with a card over a CardTransport
+ * and report each exchange through UiCallbacks
+ *
+ * Nothing here depends on android: console messages are looked up through
+ * Messages, which the app serves from its string resources (see
+ * ResourceMessages), and logging goes through util.Log.
+ */
+public class ReaderXcvr implements Runnable {
+    protected static final String TAG = "smartcard-reader";
+
+    public interface UiCallbacks {
+        // display console messages
+        // apdu is the raw command or response; response data is pretty
+        // printed with tagProvider only if and when the user views or
+        // shares it, and tagProvider is null if there is nothing to parse
+        void onMessageSend(String raw, String name, byte[] apdu);
+        void onMessageRcv(String raw, String name, byte[] apdu, TagProvider tagProvider);
+        void onOkay(String message);
+        void onError(String message);
+        void onSeparator();
+
+        // clear console messages
+        void clearMessages();
+
+        // ui listeners
+        void setUserSelectListener(UiListener callback);
+        
+        // cleanup, if needed
+        void onFinish(boolean err);
+    }
+
+    public interface UiListener {
+        void onUserSelect(String aid);
+    }
+
+    // console messages, by string resource name
+    public interface Messages {
+        String TAG_LOST_ERR = "tag_lost_err";
+        String SELECT_PPSE_OK = "select_ppse_ok";
+        String SELECT_PPSE_ERR = "select_ppse_err";
+        String SELECT_APP_OK = "select_app_ok";
+        String SELECT_APP_ERR = "select_app_err";
+        String GPO_OK = "gpo_ok";
+        String GPO_ERR = "gpo_err";
+        String GPO_AIP_AFL_ERR = "gpo_aip_afl_err";
+        String READ_REC_OK = "read_rec_ok";
+        String READ_REC_ERR = "read_rec_err";
+
+        // the named message, formatted with formatArgs
+        String getString(String name, Object... formatArgs);
+    }
+
+    public static final int SW_NO_ERROR = 0x9000;    
+    public static final int SW1_BYTES_REMAINING = 0x61;
+
+    protected CardTransport mTransport;
+    protected UiCallbacks mUiCallbacks;
+    protected Messages mMessages;
+
+    protected String mAid;
+    protected byte[] mAidBytes;
+
+    // resolves the tags of parsed responses; set to the selected app's
+    // tags by subclasses once an app is selected
+    protected TagProvider mTagProvider = EMVTags.getResolver();
+
+    // whether read records that ask for all the card can send (Le 0) go
+    // with extended lengths, so large records come in one exchange: only if
+    // the reader supports them, and until the card rejects one; null until
+    // the first such command. Other commands always go short, since some
+    // cards and emulators (eg. android hce) can't route an extended select
+    private Boolean mPreferExtended;
+
+    // runs checkRcv() for the responses shown by sendAndRcv(), so the card
+    // isn't held while nested data is decoded; null until the first one
+    private DisplayPipeline mChecks;
+
+    public ReaderXcvr(CardTransport transport, String aid, UiCallbacks uiCallbacks,
+            Messages messages) {
+        this.mTransport = transport;
+        this.mAid = aid;
+        this.mAidBytes = Util.hexToBytes(aid);
+        this.mUiCallbacks = uiCallbacks;
+        this.mMessages = messages;
+    }
+
+    protected static String bytesToHexAndAscii(byte[] data, boolean ascii) {
+        if (data.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(data.length * 4 + 5);
+        // don't waste space w/ ascii if we just have the two status bytes
+        if (ascii && data.length > 2) {
+            Util.appendHexAndAscii(sb, data, 0, data.length);
+        } else {
+            Util.appendSpacedHex(sb, data, 0, data.length);
+        }
+        return sb.toString();
+    }
+
+    // build boilerplate command APDU, short or extended
+    protected byte[] buildCmdApdu(CommandApdu cmdApdu) {
+        return cmdApdu.toBytes(preferExtended(cmdApdu));
+    }
+
+    // build select command APDU
+    protected byte[] buildSelectApdu(byte[] aidBytes) {
+        return buildCmdApdu(new SelectApdu(aidBytes));
+    }
+
+    private boolean preferExtended(CommandApdu cmdApdu) {
+        if (!(cmdApdu instanceof ReadRecordApdu) || !cmdApdu.isLeUsed()
+                || cmdApdu.getLe() != 0) {
+            return false;
+        }
+        if (mPreferExtended == null) {
+            mPreferExtended = mTransport.isExtendedLengthApduSupported();
+        }
+        return mPreferExtended;
+    }
+
+    // true if the card failed a command sent extended only by preference;
+    // cards that don't take extended lengths may answer wrong length (6700)
+    // or any other error, so only 9000 and 61xx count as accepted. Extended
+    // lengths are then no longer preferred, and the command should be sent
+    // again
+    protected boolean isExtendedRejected(CommandApdu cmdApdu, byte[] cmdBytes,
+            ResponseApdu rspApdu) {
+        if (rspApdu.isStatus(SW_NO_ERROR) || rspApdu.getSW1() == SW1_BYTES_REMAINING
+                || !preferExtended(cmdApdu) || cmdBytes.length == cmdApdu.toBytes().length) {
+            return false;
+        }
+        Log.d(TAG, "Extended length rejected, using short");
+        mPreferExtended = false;
+        return true;
+    }
+
+    // send command APDU, get response APDU, and display to user   
+    protected ResponseApdu sendAndRcv(CommandApdu cmdApdu, boolean ascii)
+            throws IOException {
+        byte[] cmdBytes = buildCmdApdu(cmdApdu);
+        showSend(cmdApdu, cmdBytes);
+        ResponseApdu rspApdu = new ResponseApdu(mTransport.transceive(cmdBytes));
+        if (showRcv(cmdApdu, rspApdu, ascii, mTagProvider)) {
+            postCheck(cmdApdu, rspApdu, mTagProvider);
+        }
+        if (isExtendedRejected(cmdApdu, cmdBytes, rspApdu)) {
+            // the rejected exchange stays on the console
+            return sendAndRcv(cmdApdu, ascii);
+        }
+
+        /*
+        Log.d(TAG, "response APDU: " + Util.bytesToHex(rsp));
+        if (data.length > 0) {
+            Log.d(TAG, TLVUtil.prettyPrintAPDUResponse(data));
+        }
+        */
+        return rspApdu;
+    }
+
+    // display command APDU
+    protected void showSend(CommandApdu cmdApdu, byte[] cmdBytes) {
+        String cmdStr = CommandApdu.toString(cmdBytes, cmdApdu.getLc());
+        mUiCallbacks.onMessageSend(cmdStr, cmdApdu.getCommandName(), cmdBytes);
+    }
+
+    // check the top level of the response APDU parses and display to user;
+    // returns whether the data was passed on for parsing, and so should
+    // be checked with checkRcv(). tagProvider is passed in rather than read
+    // from mTagProvider, since this may run on a DisplayPipeline worker
+    protected boolean showRcv(CommandApdu cmdApdu, ResponseApdu rspApdu, boolean ascii,
+            TagProvider tagProvider) {
+        byte[] data = rspApdu.getData();
+
+        boolean parsable = data.length > 0;
+        String errMsg = "no error";
+        try {
+            if (parsable) {
+                // the top level data objects are decoded now, and cached
+                // in rspApdu; nested data is left to checkRcv()
+                rspApdu.getDataTree(tagProvider);
+            }
+        } catch (TLVException e) {
+            parsable = false;
+            errMsg = e.getMessage();
+        }
+
+        mUiCallbacks.onMessageRcv(bytesToHexAndAscii(rspApdu.toBytes(), ascii),
+                cmdApdu.getCommandName(), rspApdu.toBytes(), parsable ? tagProvider : null);
+
+        if (data.length > 0 && !parsable) {
+            mUiCallbacks.onError(errMsg);
+        }
+        return parsable;
+    }
+
+    // decode the nested data of a response shown by showRcv(), so that
+    // malformed data is reported before the user views or shares it; runs
+    // on a DisplayPipeline worker
+    protected void checkRcv(CommandApdu cmdApdu, ResponseApdu rspApdu,
+            TagProvider tagProvider) {
+        try {
+            TLVPrettyPrinter.getDefault().check(rspApdu.getDataTree(tagProvider));
+        } catch (TLVException e) {
+            // this may show after later exchanges, so name the response
+            String name = cmdApdu.getCommandName();
+            mUiCallbacks.onError(name.isEmpty() ? e.getMessage() : name + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void postCheck(final CommandApdu cmdApdu,
+            final ResponseApdu rspApdu, final TagProvider tagProvider) {
+        if (mChecks == null) {
+            mChecks = new DisplayPipeline();
+        }
+        mChecks.post(new Runnable() {
+            @Override
+            public void run() {
+                checkRcv(cmdApdu, rspApdu, tagProvider);
+            }
+        });
+    }
+
+    // wait for the checks posted by sendAndRcv(); subclasses call this
+    // before run() returns, so that their errors show ahead of any error
+    // reported by run()
+    protected void finishChecks() {
+        DisplayPipeline checks;
+        synchronized (this) {
+            checks = mChecks;
+            mChecks = null;
+        }
+        if (checks != null) {
+            checks.finish();
+            checks.rethrowFailure();
+        }
+    }
+
+    @Override
+    public void run() {
+    }
+}
@@ -79,6 +79,7 @@ public class SmartcardApp {
 
     public void setAid(String aid) {
         mAid = aid;
+        mAidBytes = Util.hexToBytes(aid);
     }
 
     public void setType(int type) {
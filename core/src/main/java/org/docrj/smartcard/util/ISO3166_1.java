@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Ryan Jones
+ * Copyright 2010 sasc
+ * 
+ * This file was modified from the original source:
+ * https://code.google.com/p/javaemvreader/
+ * 
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.util;
+
+import java.util.Arrays;
+
+/**
+ * ISO 3166-1
+ * ISO Country Codes (3 digit numeric, alpha-2 and alpha-3)
+ *
+ * java.util.Locale doesn't support the 3-digit code variant of 3166 (part 1),
+ * so we must use our own list (core/src/main/iso/iso3166_1.txt), compiled
+ * into ISOCodeIndex at build time. Lookups index or binary search its arrays
+ * and allocate nothing.
+ */
+public class ISO3166_1 {
+
+    public static String getCountryForCode(int code) {
+        int i = indexOf(code);
+        return i < 0 ? null : ISOCodeIndex.COUNTRY_NAMES[i];
+    }
+
+    public static String getCountryForCode(String code) {
+        return getCountryForCode(parseNumericCode(code));
+    }
+
+    public static String getAlpha2ForCode(int code) {
+        int i = indexOf(code);
+        return i < 0 ? null : ISOCodeIndex.COUNTRY_ALPHA2[i];
+    }
+
+    public static String getAlpha3ForCode(int code) {
+        int i = indexOf(code);
+        return i < 0 ? null : ISOCodeIndex.COUNTRY_ALPHA3[i];
+    }
+
+    /**
+     * @return the numeric code of the country, or -1 if unknown
+     */
+    public static int getCodeForAlpha2(CharSequence alpha2) {
+        return findAlpha(ISOCodeIndex.COUNTRY_ALPHA2_KEYS, ISOCodeIndex.COUNTRY_ALPHA2_ENTRIES,
+                ISOCodeIndex.COUNTRY_NUMERIC, alpha2, 2);
+    }
+
+    /**
+     * @return the numeric code of the country, or -1 if unknown
+     */
+    public static int getCodeForAlpha3(CharSequence alpha3) {
+        return findAlpha(ISOCodeIndex.COUNTRY_ALPHA3_KEYS, ISOCodeIndex.COUNTRY_ALPHA3_ENTRIES,
+                ISOCodeIndex.COUNTRY_NUMERIC, alpha3, 3);
+    }
+
+    private static int indexOf(int code) {
+        if (code < 0 || code >= ISOCodeIndex.COUNTRY_BY_NUMERIC.length) {
+            return -1;
+        }
+        return ISOCodeIndex.COUNTRY_BY_NUMERIC[code] - 1;
+    }
+
+    /*
+     * Shared with ISO4217_Numeric
+     */
+
+    /**
+     * Parses a numeric code of up to 3 digits (eg. "826" or "036")
+     *
+     * @return the code, or -1 if not a numeric code
+     */
+    static int parseNumericCode(CharSequence code) {
+        if (code == null || code.length() == 0 || code.length() > 3) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Packs an alphabetic code into an int, one upper case char per byte,
+     * the way core/isocodes.gradle packs the codes of ISOCodeIndex
+     *
+     * @return the packed code, or -1 if not a code of the given length
+     */
+    static int packAlphaCode(CharSequence code, int length) {
+        if (code == null || code.length() != length) {
+            return -1;
+        }
+        int key = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            } else if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            key = (key << 8) | c;
+        }
+        return key;
+    }
+
+    /**
+     * @return the numeric code of the entry with the given alphabetic code,
+     *         or -1 if there is none
+     */
+    static int findAlpha(int[] keys, short[] entries, short[] numeric,
+            CharSequence code, int length) {
+        int key = packAlphaCode(code, length);
+        if (key < 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(keys, key);
+        return i < 0 ? -1 : numeric[entries[i]];
+    }
+}
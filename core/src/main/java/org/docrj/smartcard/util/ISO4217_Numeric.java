@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Ryan Jones
+ * Copyright 2010 sasc
+ * 
+ * This file was modified from the original source:
+ * https://code.google.com/p/javaemvreader/
+ * 
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ISO 4217
+ * ISO 3-digit Currency Code
+ *
+ * http://www.iso.org/iso/support/faqs/faqs_widely_used_standards/widely_used_standards_other/currency_codes/currency_codes_list-1.htm
+ *
+ * java.util.Currency is pretty useless in java 1.6. Must wait for java 1.7 to get the methods:
+ * getDisplayName()
+ * getNumericCode()
+ * getAvailableCurrencies()
+ *
+ * The list (core/src/main/iso/iso4217.txt) is compiled into ISOCodeIndex at
+ * build time; lookups by numeric or alphabetic code allocate nothing.
+ */
+public class ISO4217_Numeric {
+
+    private static final Currency[] currencies = new Currency[ISOCodeIndex.CURRENCY_NUMERIC.length];
+
+    static {
+        for (int i = 0; i < currencies.length; i++) {
+            currencies[i] = new Currency(ISOCodeIndex.CURRENCY_NUMERIC[i],
+                    ISOCodeIndex.CURRENCY_ALPHA3[i], ISOCodeIndex.CURRENCY_NAMES[i],
+                    ISOCodeIndex.CURRENCY_MINOR_UNITS[i]);
+        }
+    }
+
+    public static String getCurrencyNameForCode(int code) {
+        Currency c = getCurrencyForCode(code);
+        if (c == null) {
+            return null;
+        }
+        return c.getDisplayName();
+    }
+
+    public static String getCurrencyNameForCode(String code) {
+        return getCurrencyNameForCode(ISO3166_1.parseNumericCode(code));
+    }
+
+    public static Currency getCurrencyForCode(int code) {
+        if (code < 0 || code >= ISOCodeIndex.CURRENCY_BY_NUMERIC.length) {
+            return null;
+        }
+        int i = ISOCodeIndex.CURRENCY_BY_NUMERIC[code] - 1;
+        return i < 0 ? null : currencies[i];
+    }
+
+    /**
+     * @return the number of digits after the decimal separator, or -1 if
+     *         the currency is unknown or has no minor unit (eg. XAU)
+     */
+    public static int getMinorUnitForCode(int code) {
+        Currency c = getCurrencyForCode(code);
+        return c == null ? -1 : c.getMinorUnit();
+    }
+
+    public static Integer getNumericCodeForCurrencyCode(String currencyCode) {
+        int code = getNumericCode(currencyCode);
+        return code < 0 ? null : code;
+    }
+
+    /**
+     * @return the numeric code for the alphabetic code (eg. "USD"), or -1
+     *         if unknown
+     */
+    public static int getNumericCode(CharSequence currencyCode) {
+        return ISO3166_1.findAlpha(ISOCodeIndex.CURRENCY_ALPHA3_KEYS,
+                ISOCodeIndex.CURRENCY_ALPHA3_ENTRIES, ISOCodeIndex.CURRENCY_NUMERIC,
+                currencyCode, 3);
+    }
+
+    public static List<Integer> getNumericCodeForLocale(final Locale locale) {
+        List<Integer> codeList = new ArrayList<Integer>();
+        if (locale.getCountry() == null || locale.getCountry().length() != 2) {
+            //We have no country! Might find more than 1 match
+            for (Locale l : Locale.getAvailableLocales()) {
+                if (l.getLanguage().equals(locale.getLanguage()) && l.getCountry() != null && l.getCountry().length() == 2) {
+                    int code = getNumericCodeForCountry(l);
+                    if (code >= 0) {
+                        codeList.add(code);
+                    }
+                }
+            }
+        } else {
+            int code = getNumericCodeForCountry(locale);
+            if (code >= 0) {
+                codeList.add(code);
+            }
+        }
+        return codeList;
+    }
+
+    /**
+     * Returns the first code getNumericCodeForLocale(locale) would list, or
+     * -1, without building the list (or, given a country, any allocation)
+     */
+    public static int findNumericCodeForLocale(final Locale locale) {
+        if (locale.getCountry() == null || locale.getCountry().length() != 2) {
+            for (Locale l : Locale.getAvailableLocales()) {
+                if (l.getLanguage().equals(locale.getLanguage()) && l.getCountry() != null && l.getCountry().length() == 2) {
+                    int code = getNumericCodeForCountry(l);
+                    if (code >= 0) {
+                        return code;
+                    }
+                }
+            }
+            return -1;
+        }
+        return getNumericCodeForCountry(locale);
+    }
+
+    private static int getNumericCodeForCountry(Locale locale) {
+        java.util.Currency currency;
+        try {
+            currency = java.util.Currency.getInstance(locale);
+        } catch (IllegalArgumentException e) {
+            // country not supported by java.util.Currency
+            return -1;
+        }
+        return currency == null ? -1 : getNumericCode(currency.getCurrencyCode());
+    }
+
+    public static class Currency {
+
+        int numericCode;
+        String code;
+        String displayName;
+        int minorUnit;
+
+        Currency(int numericCode, String code, String displayName, int minorUnit) {
+            this.numericCode = numericCode;
+            this.code = code;
+            this.displayName = displayName;
+            this.minorUnit = minorUnit;
+        }
+
+        public int getNumericCode() {
+            return numericCode;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * @return -1 if the currency has no minor unit
+         */
+        public int getMinorUnit() {
+            return minorUnit;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println(ISO4217_Numeric.getCurrencyNameForCode(578));
+        System.out.println(ISO4217_Numeric.getCurrencyNameForCode(955));
+        System.out.println(ISO4217_Numeric.getCurrencyNameForCode(999));
+        System.out.println(ISO4217_Numeric.getCurrencyNameForCode(998));
+        System.out.println(ISO4217_Numeric.getCurrencyNameForCode(1000));
+        System.out.println(ISO4217_Numeric.getNumericCodeForCurrencyCode("USD"));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map with primitive int keys, eg. tag ids
+ *
+ * Entries are kept in insertion order in dense arrays, indexed by an open
+ * addressing (linear probing) table, so get() neither boxes the key nor
+ * allocates. Entries cannot be removed.
+ */
+public final class IntHashMap<V> {
+
+    private int[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+
+    // entry index + 1 for each slot, 0 if the slot is empty
+    private int[] mSlots;
+    private int mMask;
+
+    public IntHashMap() {
+        this(16);
+    }
+
+    public IntHashMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        allocSlots(capacity);
+    }
+
+    private void allocSlots(int capacity) {
+        // keep the load factor at or below 0.5
+        int numSlots = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        mSlots = new int[numSlots];
+        mMask = numSlots - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(int key) {
+        for (int slot = hash(key) & mMask; ; slot = (slot + 1) & mMask) {
+            int entry = mSlots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (mKeys[entry - 1] == key) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns null if the key is not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = indexOf(key);
+        return (index < 0) ? null : (V) mValues[index];
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the previous value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            V old = (V) mValues[index];
+            mValues[index] = value;
+            return old;
+        }
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+            allocSlots(capacity);
+            for (int i = 0; i < mSize; i++) {
+                insertSlot(mKeys[i], i);
+            }
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        insertSlot(key, mSize);
+        mSize++;
+        return null;
+    }
+
+    private void insertSlot(int key, int index) {
+        int slot = hash(key) & mMask;
+        while (mSlots[slot] != 0) {
+            slot = (slot + 1) & mMask;
+        }
+        mSlots[slot] = index + 1;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int keyAt(int index) {
+        if (index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + " >= size " + mSize);
+        }
+        return mKeys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        if (index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + " >= size " + mSize);
+        }
+        return (V) mValues[index];
+    }
+
+    /**
+     * Returns a read-only view of the values in insertion order
+     */
+    public List<V> values() {
+        return new AbstractList<V>() {
+            @Override
+            public V get(int index) {
+                return valueAt(index);
+            }
+
+            @Override
+            public int size() {
+                return mSize;
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.util;
+
+/**
+ * Logging for the core library (the iso7816, emv and util packages and the
+ * reader xcvrs), which doesn't depend on android.util.Log
+ *
+ * Messages are dropped until a Logger is set; the app sets one that
+ * forwards to android.util.Log (see reader.AndroidLogger).
+ */
+public final class Log {
+
+    public interface Logger {
+        public void d(String tag, String msg);
+
+        public void w(String tag, String msg);
+
+        public void e(String tag, String msg, Throwable tr);
+    }
+
+    private static final Logger NO_OP = new Logger() {
+        @Override
+        public void d(String tag, String msg) {
+        }
+
+        @Override
+        public void w(String tag, String msg) {
+        }
+
+        @Override
+        public void e(String tag, String msg, Throwable tr) {
+        }
+    };
+
+    private static volatile Logger sLogger = NO_OP;
+
+    private Log() {
+    }
+
+    /**
+     * @param logger null to drop all messages
+     */
+    public static void setLogger(Logger logger) {
+        sLogger = (logger == null) ? NO_OP : logger;
+    }
+
+    public static void d(String tag, String msg) {
+        sLogger.d(tag, msg);
+    }
+
+    public static void w(String tag, String msg) {
+        sLogger.w(tag, msg);
+    }
+
+    public static void e(String tag, String msg) {
+        sLogger.e(tag, msg, null);
+    }
+
+    public static void e(String tag, String msg, Throwable tr) {
+        sLogger.e(tag, msg, tr);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Ryan Jones
+ *
+ * This file is part of smartcard-reader, package org.docrj.smartcard.reader.
+ *
+ * smartcard-reader is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * smartcard-reader is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with smartcard-reader. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.docrj.smartcard.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens the data files the emv and util packages load at runtime (the
+ * terminal properties), by name
+ *
+ * The app serves them from res/raw (see reader.RawResourceLoader); other
+ * users can serve them from a directory with FileResourceLoader.
+ */
+public interface ResourceLoader {
+
+    public static final String TERMINAL_PROPERTIES = "terminal_properties";
+
+    /**
+     * Opens the named resource; the caller closes the stream
+     *
+     * @throws java.io.FileNotFoundException if there is no such resource
+     */
+    public InputStream open(String name) throws IOException;
+}
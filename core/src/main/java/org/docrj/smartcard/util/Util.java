@@ -29,6 +29,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Date;
 import java.util.Locale;
@@ -38,11 +39,7 @@ public class Util {
 
     public static String getSpaces(int length) {
         StringBuilder buf = new StringBuilder(length);
-
-        for (int i = 0; i < length; i++) {
-            buf.append(" ");
-        }
-
+        appendSpaces(buf, length);
         return buf.toString();
     }
 
@@ -68,23 +65,30 @@ public class Util {
     }
 
     public static String prettyPrintHex(byte[] data, int indent) {
-        return Util.prettyPrintHex(Util.byteArrayToHexString(data), indent, true);
+        return prettyPrintHex(data, 0, data.length, indent);
     }
     
     public static String prettyPrintHex(byte[] data) {
-        return Util.prettyPrintHex(Util.byteArrayToHexString(data), 0, true);
+        return prettyPrintHex(data, 0, data.length, 0);
     }
     
     public static String prettyPrintHex(byte[] data, int startPos, int length) {
-        return Util.prettyPrintHex(Util.byteArrayToHexString(data, startPos, length), 0, true);
+        return prettyPrintHex(data, startPos, length, 0);
+    }
+
+    private static String prettyPrintHex(byte[] data, int startPos, int length, int indent) {
+        checkRange(data, startPos, length);
+        StringBuilder buf = new StringBuilder(length * 2 + (length / 16) * (indent + 1));
+        appendWrappedHex(buf, data, startPos, length, 32, indent);
+        return buf.toString();
     }
 
     public static String prettyPrintHexNoWrap(byte[] data) {
-        return Util.prettyPrintHex(Util.byteArrayToHexString(data), 0, false);
+        return byteArrayToHexString(data);
     }
     
     public static String prettyPrintHexNoWrap(byte[] data, int startPos, int length) {
-        return Util.prettyPrintHex(Util.byteArrayToHexString(data, startPos, length), 0, false);
+        return byteArrayToHexString(data, startPos, length);
     }
     
     public static String prettyPrintHexNoWrap(String in) {
@@ -155,11 +159,8 @@ public class Util {
     }
 
     public static String byte2Hex(byte b) {
-        String[] HEX_DIGITS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"};
         int nb = b & 0xFF;
-        int i_1 = (nb >>> 4) & 0xF;
-        int i_2 = nb & 0xF;
-        return HEX_DIGITS[i_1] + HEX_DIGITS[i_2];
+        return new String(new char[] { HEX_LOWER[nb >>> 4], HEX_LOWER[nb & 0x0F] });
     }
 
     public static String short2Hex(short s) {
@@ -211,38 +212,23 @@ public class Util {
             return "";
 //            throw new IllegalArgumentException("Argument 'byteArray' cannot be null");
         }
-        if(byteArray.length < startPos+length){
-            throw new IllegalArgumentException("startPos("+startPos+")+length("+length+") > byteArray.length("+byteArray.length+")");
-        }
-        StringBuilder buf = new StringBuilder();
-        for (int i = startPos; i < startPos+length; i++) {
-            if (byteArray[i] >= (byte) 0x20 && byteArray[i] < (byte) 0x7F) {
-                buf.append((char) byteArray[i]);
-            } else {
-                buf.append(".");
-            }
-        }
+        checkRange(byteArray, startPos, length);
+        StringBuilder buf = new StringBuilder(length);
+        appendSafePrintChars(buf, byteArray, startPos, length);
         return buf.toString();
     }
 
     public static byte[] hexToBytes(String str) {
         byte[] bytes = new byte[str.length() / 2];
         for (int i = 0; i < bytes.length; i++) {
-            bytes[i] = (byte) Integer.parseInt(str.substring(2 * i, 2 * i + 2),
-                    16);
+            bytes[i] = (byte) ((hexDigit(str, 2 * i) << 4) | hexDigit(str, 2 * i + 1));
         }
         return bytes;
     }    
 
-    final private static char[] hexArray = "0123456789ABCDEF".toCharArray();
-
     public static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
-        for (int j = 0; j < bytes.length; j++) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = hexArray[v >>> 4];
-            hexChars[j * 2 + 1] = hexArray[v & 0x0F];
-        }
+        encodeHex(bytes, 0, bytes.length, hexChars, 0, true);
         return new String(hexChars);
     }    
     
@@ -262,17 +248,199 @@ public class Util {
         if (byteArray == null) {
             return "";
         }
-        if(byteArray.length < startPos+length){
-            throw new IllegalArgumentException("startPos("+startPos+")+length("+length+") > byteArray.length("+byteArray.length+")");
+        checkRange(byteArray, startPos, length);
+        char[] hexChars = new char[length * 2];
+        encodeHex(byteArray, startPos, length, hexChars, 0, false);
+        return new String(hexChars);
+    }
+
+    /*
+     * Hex codec
+     *
+     * Encodes from lookup tables into a caller supplied char[] or
+     * StringBuilder, so that a reused buffer (with enough capacity) formats
+     * without allocating. Hex is lower case unless upper case is asked for.
+     */
+
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    // value of each ascii hex digit, -1 for other chars
+    private static final byte[] HEX_VALUES = new byte[128];
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_LOWER[i]] = (byte) i;
+            HEX_VALUES[HEX_UPPER[i]] = (byte) i;
+        }
+    }
+
+    private static final char[] SPACES = new char[64];
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
+
+    /**
+     * Writes 2 hex digits per byte into dst
+     *
+     * @return the offset in dst after the last digit written
+     */
+    public static int encodeHex(byte[] data, int offset, int length,
+            char[] dst, int dstOffset, boolean upperCase) {
+        char[] digits = upperCase ? HEX_UPPER : HEX_LOWER;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            dst[dstOffset++] = digits[b >>> 4];
+            dst[dstOffset++] = digits[b & 0x0F];
+        }
+        return dstOffset;
+    }
+
+    public static StringBuilder appendHex(StringBuilder out, byte[] data, int offset, int length) {
+        return appendHex(out, data, offset, length, false);
+    }
+
+    public static StringBuilder appendHex(StringBuilder out, byte[] data, int offset, int length,
+            boolean upperCase) {
+        char[] digits = upperCase ? HEX_UPPER : HEX_LOWER;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            out.append(digits[b >>> 4]);
+            out.append(digits[b & 0x0F]);
+        }
+        return out;
+    }
+
+    /**
+     * Appends the low 8 bits of b as 2 hex digits
+     */
+    public static StringBuilder appendHexByte(StringBuilder out, int b) {
+        out.append(HEX_LOWER[(b >>> 4) & 0x0F]);
+        out.append(HEX_LOWER[b & 0x0F]);
+        return out;
+    }
+
+    /**
+     * Appends each byte as 2 hex digits followed by a space (eg. "6f 1a "),
+     * as the console shows them
+     */
+    public static StringBuilder appendSpacedHex(StringBuilder out, byte[] data, int offset,
+            int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = data[i] & 0xFF;
+            out.append(HEX_LOWER[b >>> 4]);
+            out.append(HEX_LOWER[b & 0x0F]);
+            out.append(' ');
         }
-//        int readBytes = byteArray.length;
-        StringBuilder hexData = new StringBuilder();
-        int onebyte;
+        return out;
+    }
+
+    /**
+     * Appends spaced hex (see appendSpacedHex), then a line with the same
+     * bytes as printable chars (see appendSafePrintChars):
+     *
+     *   56 49 53 41 
+     *   ...	VISA
+     */
+    public static StringBuilder appendHexAndAscii(StringBuilder out, byte[] data, int offset,
+            int length) {
+        appendSpacedHex(out, data, offset, length);
+        out.append("\n...\t");
+        return appendSafePrintChars(out, data, offset, length);
+    }
+
+    /**
+     * Appends hex, starting a new line indented by indent spaces after every
+     * charsPerLine hex digits
+     *
+     * The first line is not indented; that is up to the caller.
+     */
+    public static StringBuilder appendWrappedHex(StringBuilder out, byte[] data, int offset,
+            int length, int charsPerLine, int indent) {
+        int numChars = length * 2;
         for (int i = 0; i < length; i++) {
-            onebyte = ((0x000000ff & byteArray[startPos+i]) | 0xffffff00);
-            hexData.append(Integer.toHexString(onebyte).substring(6));
+            int b = data[offset + i] & 0xFF;
+            out.append(HEX_LOWER[b >>> 4]);
+            out.append(HEX_LOWER[b & 0x0F]);
+
+            int nextPos = (i + 1) * 2;
+            if (nextPos % charsPerLine == 0 && nextPos != numChars) {
+                out.append('\n');
+                appendSpaces(out, indent);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Appends the printable chars as is and any others as '.'
+     */
+    public static StringBuilder appendSafePrintChars(StringBuilder out, byte[] data, int offset,
+            int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] >= (byte) 0x20 && data[i] < (byte) 0x7F) {
+                out.append((char) data[i]);
+            } else {
+                out.append('.');
+            }
+        }
+        return out;
+    }
+
+    public static StringBuilder appendSpaces(StringBuilder out, int length) {
+        while (length > 0) {
+            int n = Math.min(length, SPACES.length);
+            out.append(SPACES, 0, n);
+            length -= n;
+        }
+        return out;
+    }
+
+    /**
+     * Decodes hex digits into dst, skipping spaces
+     *
+     * @return the number of bytes written
+     * @throws NumberFormatException on chars other than hex digits and
+     *         spaces, or an odd number of digits
+     */
+    public static int decodeHex(CharSequence hex, byte[] dst, int dstOffset) {
+        int start = dstOffset;
+        int high = -1;
+        for (int i = 0; i < hex.length(); i++) {
+            if (hex.charAt(i) == ' ') {
+                continue;
+            }
+            int digit = hexDigit(hex, i);
+            if (high < 0) {
+                high = digit;
+            } else {
+                dst[dstOffset++] = (byte) ((high << 4) | digit);
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + hex);
+        }
+        return dstOffset - start;
+    }
+
+    private static int hexDigit(CharSequence hex, int index) {
+        char c = hex.charAt(index);
+        int digit = (c < HEX_VALUES.length) ? HEX_VALUES[c] : -1;
+        if (digit < 0) {
+            throw new NumberFormatException("Not a hex digit: '" + c + "' at " + index + " in " + hex);
+        }
+        return digit;
+    }
+
+    private static void checkRange(byte[] byteArray, int startPos, int length) {
+        if(byteArray.length < startPos+length){
+            throw new IllegalArgumentException("startPos("+startPos+")+length("+length+") > byteArray.length("+byteArray.length+")");
         }
-        return hexData.toString();
     }
 
     public static String int2Hex(int i) {
@@ -375,20 +543,17 @@ public class Util {
     }
 
     public static byte[] fromHexString(String encoded) {
-        encoded = removeSpaces(encoded);
-        if (encoded.length() == 0){
-            return new byte[0];
-        }
-        if ((encoded.length() % 2) != 0) {
-            throw new IllegalArgumentException("Input string must contain an even number of characters: "+encoded);
+        int numChars = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            if (encoded.charAt(i) != ' ') {
+                numChars++;
+            }
         }
-        final byte result[] = new byte[encoded.length() / 2];
-        final char enc[] = encoded.toCharArray();
-        for (int i = 0; i < enc.length; i += 2) {
-            StringBuilder curr = new StringBuilder(2);
-            curr.append(enc[i]).append(enc[i + 1]);
-            result[i / 2] = (byte) Integer.parseInt(curr.toString(), 16);
+        if ((numChars % 2) != 0) {
+            throw new IllegalArgumentException("Input string must contain an even number of characters: "+removeSpaces(encoded));
         }
+        final byte result[] = new byte[numChars / 2];
+        decodeHex(encoded, result, 0);
         return result;
     }
 